@@ -0,0 +1,148 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fails when the per-piece allocation of the game loop goes over budget.
+ * The budgets, in bytes, can be changed with the system properties
+ * tetris.budget.piece (a whole headless game move, brain included) and
+ * tetris.budget.cycle (one place/clearRows/undo on a board). Both are
+ * measured after a warm-up, once the JIT has had a chance to remove the
+ * allocations escape analysis can remove, as the lowest of a few rounds.
+ * <p>
+ * The measurements run in a JVM of their own (see main()): code that ran
+ * earlier in the test JVM, e.g. other brains going through the same call
+ * sites, changes what the JIT inlines and so what it can remove.
+ */
+public class AllocationBudgetTest {
+
+    private static final long PIECE_BUDGET = Long.getLong("tetris.budget.piece", 1024);
+    private static final long CYCLE_BUDGET = Long.getLong("tetris.budget.cycle", 64);
+
+    @Test
+    public void testMeter() {
+        if (!AllocationMeter.isSupported()) {
+            return;
+        }
+        AllocationMeter meter = new AllocationMeter("test");
+        long start = AllocationMeter.threadAllocatedBytes();
+        long[] big = new long[10000];
+        meter.recordSince(start);
+        assertEquals(10000, big.length);
+        assertEquals(1, meter.getCount());
+        assertTrue(meter.getBytes() >= 80000);
+        meter.reset();
+        assertEquals(0, meter.getCount());
+    }
+
+    // bytes per piece of headless games played by the given brain
+    private static double piecesBytes(Brain brain, long seed, int pieces) {
+        HeadlessGame game = new HeadlessGame(seed);
+        long start = AllocationMeter.threadAllocatedBytes();
+        for (int i = 0; i < pieces; i++) {
+            if (!game.isGameOn()) {
+                game = new HeadlessGame(seed + i);
+            }
+            game.playWith(brain);
+        }
+        return (double) (AllocationMeter.threadAllocatedBytes() - start) / pieces;
+    }
+
+    // lowest bytes per piece of a few rounds of DefaultBrain games
+    private static double pieceBytes() {
+        Brain brain = new DefaultBrain();
+        piecesBytes(brain, 1, 20000); // warm-up
+        double bytes = Double.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            bytes = Math.min(bytes, piecesBytes(brain, 2 + round, 5000));
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testHeadlessGame() throws Exception {
+        if (!AllocationMeter.isSupported()) {
+            return;
+        }
+        double bytes = forked("piece");
+        assertTrue("DefaultBrain game allocates " + bytes + " bytes per piece, budget " + PIECE_BUDGET,
+                bytes <= PIECE_BUDGET);
+    }
+
+    // bytes per place/clearRows/undo cycle, every rotation at every column
+    private static double cycleBytes(Board board, int cycles) {
+        List<Piece> rotations = new ArrayList<>();
+        for (Piece piece : Piece.getPieces()) {
+            rotations.addAll(Arrays.asList(DefaultBrain.rotations(piece)));
+        }
+
+        long start = AllocationMeter.threadAllocatedBytes();
+        int next = 0;
+        int x = 0;
+        for (int i = 0; i < cycles; i++) {
+            Piece piece = rotations.get(next);
+            board.place(piece, x, board.dropHeight(piece, x));
+            board.clearRows();
+            board.undo();
+            if (++x + piece.getWidth() > board.getWidth()) {
+                x = 0;
+                next = (next + 1) % rotations.size();
+            }
+        }
+        return (double) (AllocationMeter.threadAllocatedBytes() - start) / cycles;
+    }
+
+    // lowest bytes per cycle of a few rounds on a board from a game
+    private static double cycleBytes() {
+        Board board = new Board(10, 24);
+        HeadlessGame game = new HeadlessGame(3);
+        Brain brain = new DefaultBrain();
+        for (int i = 0; i < 30 && game.isGameOn(); i++) {
+            game.playWith(brain);
+        }
+        board.copyFrom(game.getBoard());
+
+        cycleBytes(board, 200000); // warm-up
+        double bytes = Double.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            bytes = Math.min(bytes, cycleBytes(board, 50000));
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testBoardCycle() throws Exception {
+        if (!AllocationMeter.isSupported()) {
+            return;
+        }
+        double bytes = forked("cycle");
+        assertTrue("Board cycle allocates " + bytes + " bytes, budget " + CYCLE_BUDGET, bytes <= CYCLE_BUDGET);
+    }
+
+    // runs main() with the given measurement in a new JVM and returns its result
+    private static double forked(String measurement) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                AllocationBudgetTest.class.getName(), measurement).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        assertEquals(output, 0, process.waitFor());
+        return Double.parseDouble(output.substring(output.lastIndexOf('\n') + 1));
+    }
+
+    /**
+     * Prints the bytes allocated per piece ("piece") or per board cycle
+     * ("cycle"), measured in this JVM.
+     */
+    public static void main(String[] args) {
+        System.out.println(args[0].equals("piece") ? pieceBytes() : cycleBytes());
+    }
+}
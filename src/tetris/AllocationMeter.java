@@ -0,0 +1,108 @@
+// AllocationMeter.java
+
+package tetris;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the heap bytes allocated by an operation -- a tick, a placement, a
+ * bestMove() -- using the per-thread allocation counter of HotSpot's
+ * ThreadMXBean: take threadAllocatedBytes() before the operation and call
+ * recordSince() with it after, on the same thread.
+ * <p>
+ * The counter is cheap to read (a field of the current thread) but only
+ * approximately exact, as it is updated a TLAB at a time for some
+ * allocations. Where the JVM does not support it, threadAllocatedBytes()
+ * returns -1 and nothing is recorded.
+ */
+public class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public AllocationMeter(String name) {
+        this.name = name;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                    return threads;
+                }
+            }
+        } catch (RuntimeException | LinkageError ignored) {
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if threadAllocatedBytes() works on this JVM.
+     */
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or
+     * -1 if that is not supported.
+     */
+    public static long threadAllocatedBytes() {
+        if (THREADS == null) {
+            return -1;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Records one operation that allocated the bytes since the given
+     * threadAllocatedBytes() value, taken on this same thread.
+     */
+    public void recordSince(long startBytes) {
+        if (startBytes < 0) {
+            return;
+        }
+        this.bytes.add(Math.max(0, threadAllocatedBytes() - startBytes));
+        this.count.increment();
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    /**
+     * Returns the average number of bytes allocated per operation, 0 if none
+     * was recorded.
+     */
+    public double getBytesPerOperation() {
+        long count = getCount();
+        return (count == 0) ? 0 : (double) getBytes() / count;
+    }
+
+    public void reset() {
+        this.count.reset();
+        this.bytes.reset();
+    }
+
+    /*
+     * One line summary used by the periodic text dump.
+     */
+    public String toString() {
+        return String.format("%-10s n=%-8d bytes/op=%9.1f", this.name, getCount(), getBytesPerOperation());
+    }
+}
@@ -0,0 +1,20 @@
+// AnytimeBrain.java
+
+package tetris;
+
+/**
+ * A Brain that can be given a time limit. Instead of searching to a fixed
+ * depth, it refines its answer for as long as it is allowed to and returns
+ * the best move found when time is up, so the same brain can play at any
+ * game speed.
+ */
+public interface AnytimeBrain extends Brain {
+
+    /**
+     * Same as Brain.bestMove(), but returns by the given deadline (a
+     * System.nanoTime() value) with the best move found so far. Even with a
+     * deadline already passed, a move is returned if any play is possible
+     * -- at worst the one a one-piece search would pick.
+     */
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, long deadline);
+}
@@ -0,0 +1,319 @@
+// ArenaBoard.java
+
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A handle on one board of a BoardArena. It supports the same operations
+ * as Board, with the same results and the same commit/undo rules, but the
+ * board itself lives off-heap in the arena; the handle only knows where.
+ * moveTo() points a handle at another board of the same arena, so code
+ * walking through many boards can reuse a single handle.
+ * <p>
+ * Rows are packed as in Board.getRowBits(), so getRowWidth() is a bit count
+ * and clearRows() moves whole rows at once.
+ */
+public final class ArenaBoard {
+
+    private final BoardArena arena;
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final long fullRow;
+
+    private int index;
+    // byte offsets of this board's parts in the buffer
+    private int rowsAt;
+    private int backupRowsAt;
+    private int heightsAt;
+    private int backupHeightsAt;
+    private int committedAt;
+
+    ArenaBoard(BoardArena arena, int index) {
+        this.arena = arena;
+        this.buffer = arena.buffer();
+        this.width = arena.getWidth();
+        this.height = arena.getHeight();
+        this.fullRow = (1L << this.width) - 1;
+        moveTo(index);
+    }
+
+    /**
+     * Points this handle at the board at index in the same arena, and returns
+     * it.
+     */
+    public ArenaBoard moveTo(int index) {
+        this.index = index;
+        this.rowsAt = this.arena.offset(index);
+        this.backupRowsAt = this.rowsAt + 8 * this.height;
+        this.heightsAt = this.backupRowsAt + 8 * this.height;
+        this.backupHeightsAt = this.heightsAt + this.width;
+        this.committedAt = this.backupHeightsAt + this.width;
+        return this;
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    public BoardArena getArena() {
+        return this.arena;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getMaxHeight() {
+        int max = 0;
+        for (int x = 0; x < this.width; x++) {
+            max = Math.max(max, getColumnHeight(x));
+        }
+        return max;
+    }
+
+    /**
+     * Same as Board.dropHeight().
+     */
+    public int dropHeight(Piece piece, int x) {
+        int y = 0;
+        final int[] skirt = piece.getSkirtArray();
+        for (int i = 0; i < skirt.length; i++) {
+            int delta = getColumnHeight(i + x) - skirt[i];
+            if (delta > y) {
+                y = delta;
+            }
+        }
+        return y;
+    }
+
+    public int getColumnHeight(int x) {
+        return this.buffer.get(this.heightsAt + x);
+    }
+
+    public int getRowWidth(int y) {
+        return Long.bitCount(getRowBits(y));
+    }
+
+    public boolean getGrid(int x, int y) {
+        return (getRowBits(y) & (1L << x)) != 0;
+    }
+
+    public long getRowBits(int y) {
+        return this.buffer.getLong(this.rowsAt + 8 * y);
+    }
+
+    private void setRowBits(int y, long row) {
+        this.buffer.putLong(this.rowsAt + 8 * y, row);
+    }
+
+    private void setColumnHeight(int x, int h) {
+        this.buffer.put(this.heightsAt + x, (byte) h);
+    }
+
+    private boolean isCommitted() {
+        return this.buffer.get(this.committedAt) != 0;
+    }
+
+    private void setCommitted(boolean committed) {
+        this.buffer.put(this.committedAt, (byte) (committed ? 1 : 0));
+    }
+
+    /**
+     * Same as Board.canPlace().
+     */
+    public boolean canPlace(Piece piece, int x, int y) {
+        if (x < 0 || y < 0 || x + piece.getWidth() > this.width || y + piece.getHeight() > this.height) {
+            return false;
+        }
+        for (TPoint point : piece.getBody()) {
+            if (getGrid(x + point.x, y + point.y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as Board.place(): returns one of the Board.PLACE_ codes, and after
+     * PLACE_OUT_BOUNDS or PLACE_BAD the board must be undone.
+     */
+    public int place(Piece piece, int x, int y) {
+        if (!isCommitted()) {
+            throw new RuntimeException("Can only place object if the board has been commited");
+        }
+        setCommitted(false);
+
+        if (x + piece.getWidth() > this.width || y + piece.getHeight() > this.height
+                || x < 0 || y < 0) {
+            return Board.PLACE_OUT_BOUNDS;
+        }
+
+        boolean rowFilled = false;
+        for (TPoint point : piece.getBody()) {
+            int cx = x + point.x, cy = y + point.y;
+            long row = getRowBits(cy);
+            long bit = 1L << cx;
+            if ((row & bit) != 0) {
+                return Board.PLACE_BAD;
+            }
+            row |= bit;
+            setRowBits(cy, row);
+            if (cy + 1 > getColumnHeight(cx)) {
+                setColumnHeight(cx, cy + 1);
+            }
+            if (row == this.fullRow) {
+                rowFilled = true;
+            }
+        }
+        return rowFilled ? Board.PLACE_ROW_FILLED : Board.PLACE_OK;
+    }
+
+    /**
+     * Same as Board.clearRows(): deletes the full rows, moving the rows above
+     * down, and returns how many were deleted.
+     */
+    public int clearRows() {
+        final int top = getMaxHeight();
+        int to = 0;
+        for (int y = 0; y < top; y++) {
+            long row = getRowBits(y);
+            if (row != this.fullRow) {
+                if (to != y) {
+                    setRowBits(to, row);
+                }
+                to++;
+            }
+        }
+        final int cleared = top - to;
+        if (cleared == 0) {
+            return 0;
+        }
+
+        for (int y = to; y < top; y++) {
+            setRowBits(y, 0);
+        }
+
+        // recount the heights: walking down from the top, the first row in
+        // which a column's bit shows up gives its height
+        for (int x = 0; x < this.width; x++) {
+            setColumnHeight(x, 0);
+        }
+        long seen = 0;
+        for (int y = to - 1; y >= 0 && seen != this.fullRow; y--) {
+            long found = getRowBits(y) & ~seen;
+            seen |= found;
+            while (found != 0) {
+                setColumnHeight(Long.numberOfTrailingZeros(found), y + 1);
+                found &= found - 1;
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Same as Board.undo(): back to the state of the last commit().
+     */
+    public void undo() {
+        copyWithin(this.backupRowsAt, this.rowsAt, 8 * this.height);
+        copyWithin(this.backupHeightsAt, this.heightsAt, this.width);
+        setCommitted(true);
+    }
+
+    /**
+     * Same as Board.commit().
+     */
+    public void commit() {
+        copyWithin(this.rowsAt, this.backupRowsAt, 8 * this.height);
+        copyWithin(this.heightsAt, this.backupHeightsAt, this.width);
+        setCommitted(true);
+    }
+
+    // empties the board, which is left committed
+    void clear() {
+        for (int i = 0; i < this.arena.getBytesPerBoard(); i += 8) {
+            this.buffer.putLong(this.rowsAt + i, 0);
+        }
+        setCommitted(true);
+    }
+
+    /**
+     * Makes this board a copy of the other board, which must have the same
+     * size but may be in another arena. Copies everything, including the
+     * undo state.
+     */
+    public void copyFrom(ArenaBoard other) {
+        if (other.width != this.width || other.height != this.height) {
+            throw new IllegalArgumentException("Can only copy a board of the same size");
+        }
+        for (int i = 0; i < this.arena.getBytesPerBoard(); i += 8) {
+            this.buffer.putLong(this.rowsAt + i, other.buffer.getLong(other.rowsAt + i));
+        }
+    }
+
+    /**
+     * Makes this board a copy of the given packed Board of the same size,
+     * left committed.
+     */
+    public void copyFrom(Board board) {
+        if (board.getWidth() != this.width || board.getHeight() != this.height) {
+            throw new IllegalArgumentException("Can only copy a board of the same size");
+        }
+        for (int y = 0; y < this.height; y++) {
+            setRowBits(y, board.getRowBits(y));
+        }
+        for (int x = 0; x < this.width; x++) {
+            setColumnHeight(x, board.getColumnHeight(x));
+        }
+        commit();
+    }
+
+    /**
+     * Writes this board's contents into the given board of the same size,
+     * for code that only takes a Board (e.g. DefaultBrain.rateBoard()). The
+     * board is left committed.
+     */
+    public void copyTo(Board board) {
+        if (board.getWidth() != this.width || board.getHeight() != this.height) {
+            throw new IllegalArgumentException("Can only copy to a board of the same size");
+        }
+        for (int x = 0; x < this.width; x++) {
+            for (int y = 0; y < this.height; y++) {
+                board.grid[x][y] = getGrid(x, y);
+            }
+        }
+        board.updateWidthsHeights();
+        board.commit();
+    }
+
+    private void copyWithin(int from, int to, int length) {
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            this.buffer.putLong(to + i, this.buffer.getLong(from + i));
+        }
+        for (; i < length; i++) {
+            this.buffer.put(to + i, this.buffer.get(from + i));
+        }
+    }
+
+    public String toString() {
+        StringBuilder buff = new StringBuilder();
+        for (int y = this.height - 1; y >= 0; y--) {
+            buff.append('|');
+            for (int x = 0; x < this.width; x++) {
+                buff.append(getGrid(x, y) ? '+' : ' ');
+            }
+            buff.append("|\n");
+        }
+        for (int x = 0; x < this.width + 2; x++) {
+            buff.append('-');
+        }
+        buff.append('\n');
+        return buff.toString();
+    }
+}
@@ -0,0 +1,289 @@
+// Benchmark.java
+
+package tetris;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simple wall-clock micro benchmarks, run from the command line as
+ * <pre>
+ * java tetris.Benchmark [name]
+ * </pre>
+ * with no name running all of them. Each one warms up first so the JIT has
+ * compiled the code being measured, then prints the time per operation.
+ * Boards come from seeded self-play so every run measures the same work.
+ * The corpus benchmark reads its positions from a PositionCorpus file given
+ * with -Dtetris.corpus=file, so runs on different machines or versions can
+ * share them; without it, one is made from seed 1.
+ */
+public class Benchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        String name = (args.length > 0) ? args[0] : "all";
+
+        if (name.equals("all") || name.equals("analysis")) {
+            analysis(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE);
+            analysis(60, 60);
+        }
+        if (name.equals("all") || name.equals("evaluator")) {
+            evaluator(EvaluatorConfig.standard());
+            evaluator(EvaluatorConfig.parse("maxHeight=8 holes=1.25 rowTransitions=1 bumpiness=1"));
+        }
+        if (name.equals("all") || name.equals("perfectClear")) {
+            perfectClear(5);
+        }
+        if (name.equals("all") || name.equals("corpus")) {
+            corpus(System.getProperty("tetris.corpus"));
+        }
+    }
+
+    /**
+     * Returns boards taken from seeded DefaultBrain games, a few pieces
+     * apart, on boards of the given size.
+     */
+    static List<Board> sampleBoards(int count, int width, int height, long seed) {
+        List<Board> boards = new ArrayList<>();
+        Brain brain = new DefaultBrain();
+        Random random = new Random(seed);
+        HeadlessGame game = new HeadlessGame(width, height, seed);
+
+        while (boards.size() < count) {
+            if (!game.isGameOn()) {
+                game = new HeadlessGame(width, height, random.nextLong());
+            }
+            game.playWith(brain);
+            if (random.nextInt(4) == 0) {
+                boards.add(new Board(game.getBoard()));
+            }
+        }
+        return boards;
+    }
+
+    // runs the task and returns the best time per iteration, in ns
+    private static double time(Runnable task, int iterations) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, (System.nanoTime() - start) / (double) iterations);
+        }
+        return best;
+    }
+
+    /**
+     * Packed versus scalar board analysis (holes and transitions) and
+     * width/height recounting.
+     */
+    static void analysis(int width, int height) {
+        final List<Board> boards = sampleBoards(2000, width, height, 1);
+        final BoardFeatures features = new BoardFeatures();
+        final int n = boards.size();
+
+        double scalar = time(() -> {
+            for (Board board : boards) {
+                BoardAnalysis.analyzeScalar(board, features);
+            }
+        }, n);
+        double packed = time(() -> {
+            for (Board board : boards) {
+                BoardAnalysis.analyzePacked(board, features);
+            }
+        }, n);
+        System.out.printf("analysis %dx%d: scalar %.0f ns, packed %.0f ns, speedup %.1fx%n",
+                width, height, scalar, packed, scalar / packed);
+
+        // updateWidthsHeights() packs the grid and recounts from the rows,
+        // place() only does the second half
+        final Piece piece = new Piece("0 0");
+        double recount = time(() -> {
+            for (Board board : boards) {
+                board.updateWidthsHeights();
+            }
+        }, n);
+        double place = time(() -> {
+            for (Board board : boards) {
+                if (board.place(piece, 0, height - 1) <= Board.PLACE_ROW_FILLED) {
+                    board.undo();
+                }
+            }
+        }, n);
+        System.out.printf("recount %dx%d: from grid %.0f ns, place+undo %.0f ns%n", width, height, recount, place);
+    }
+
+    /**
+     * The interpreted versus the compiled evaluator for a config, with
+     * DefaultBrain's hand-written rateBoard() for reference.
+     */
+    static void evaluator(EvaluatorConfig config) {
+        final List<Board> boards = sampleBoards(2000, JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE, 1);
+        final int n = boards.size();
+        final double[] sink = new double[1];
+
+        final Evaluator interpreted = config.interpret();
+        final Evaluator compiled = EvaluatorCompiler.compile(config);
+        final DefaultBrain brain = new DefaultBrain();
+
+        double slow = time(() -> {
+            for (Board board : boards) {
+                sink[0] += interpreted.rate(board);
+            }
+        }, n);
+        double fast = time(() -> {
+            for (Board board : boards) {
+                sink[0] += compiled.rate(board);
+            }
+        }, n);
+        double hand = time(() -> {
+            for (Board board : boards) {
+                sink[0] += brain.rateBoard(board);
+            }
+        }, n);
+        System.out.printf("evaluator [%s]: interpreted %.0f ns, compiled %.0f ns, DefaultBrain %.0f ns%n",
+                config, slow, fast, hand);
+    }
+
+    /**
+     * The perfect clear solver on the low stacks of the first few moves of
+     * seeded games, knowing the next 11 pieces, with a deadline of the given
+     * number of milliseconds: how often it finds one, how often it runs out
+     * of time, and how long it takes.
+     */
+    static void perfectClear(int millis) {
+        final List<HeadlessGame> games = new ArrayList<>();
+        final Brain brain = new DefaultBrain();
+        for (int seed = 0; games.size() < 200; seed++) {
+            HeadlessGame game = new HeadlessGame(seed);
+            for (int i = 0; i < seed % 7; i++) {
+                game.playWith(brain);
+            }
+            if (game.getBoard().getMaxHeight() <= PerfectClearSolver.MAX_ROWS) {
+                games.add(game);
+            }
+        }
+
+        final PerfectClearSolver solver = new PerfectClearSolver();
+        int found = 0;
+        int late = 0;
+        long total = 0;
+        long max = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            found = late = 0;
+            total = max = 0;
+            for (HeadlessGame game : games) {
+                long start = System.nanoTime();
+                long deadline = start + millis * 1000000L;
+                if (solver.solve(game.getBoard(), game.getUpcomingPieces(11), deadline) != null) {
+                    found++;
+                }
+                long end = System.nanoTime();
+                if (end >= deadline) {
+                    late++;
+                }
+                total += end - start;
+                max = Math.max(max, end - start);
+            }
+        }
+        System.out.printf("perfectClear %d ms: found %d/%d, timed out %d, mean %.2f ms, max %.2f ms%n",
+                millis, found, games.size(), late, total / 1e6 / games.size(), max / 1e6);
+    }
+
+    /**
+     * Brains and boards on the positions of a corpus file, or of a new
+     * 2000 position one if file is null: decoding a position, bestMove() of
+     * a few brains, and every drop of the position's piece, placed and
+     * undone, on Board and on ArenaBoard.
+     */
+    static void corpus(String file) {
+        try {
+            Path path;
+            if (file != null) {
+                path = Paths.get(file);
+            } else {
+                path = Files.createTempFile("corpus", ".bin");
+                path.toFile().deleteOnExit();
+                PositionCorpus.write(path, 2000, JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE, 1,
+                        new DefaultBrain());
+            }
+            try (PositionCorpus corpus = new PositionCorpus(path)) {
+                corpus(corpus);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void corpus(final PositionCorpus corpus) {
+        final int n = corpus.size();
+        final int limit = corpus.getLimitHeight();
+        final Board board = new Board(corpus.getWidth(), corpus.getHeight());
+        final long[] sink = new long[1];
+
+        double decode = time(() -> {
+            for (int i = 0; i < n; i++) {
+                corpus.read(i, board);
+                sink[0] += board.getMaxHeight();
+            }
+        }, n);
+        System.out.printf("corpus: %d positions %dx%d, decode %.0f ns%n",
+                n, corpus.getWidth(), corpus.getHeight(), decode);
+
+        Brain[] brains = {new DefaultBrain(), new WeightedBrain()};
+        for (final Brain brain : brains) {
+            double move = time(() -> {
+                for (int i = 0; i < n; i++) {
+                    corpus.read(i, board);
+                    Brain.Move best = brain.bestMove(board, corpus.getPiece(i), limit);
+                    sink[0] += (best == null) ? 0 : best.x;
+                }
+            }, n);
+            System.out.printf("corpus: %s bestMove %.0f ns%n", brain.getClass().getSimpleName(), move);
+        }
+
+        final List<Board> boards = new ArrayList<>();
+        final BoardArena arena = new BoardArena(corpus.getWidth(), corpus.getHeight(), n);
+        final int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            Board copy = new Board(corpus.getWidth(), corpus.getHeight());
+            corpus.read(i, copy);
+            boards.add(copy);
+            indexes[i] = arena.allocate();
+            arena.get(indexes[i]).copyFrom(copy);
+        }
+        double heap = time(() -> {
+            for (int i = 0; i < n; i++) {
+                Board b = boards.get(i);
+                for (Piece piece : DefaultBrain.rotations(corpus.getPiece(i))) {
+                    for (int x = 0; x + piece.getWidth() <= b.getWidth(); x++) {
+                        sink[0] += b.place(piece, x, b.dropHeight(piece, x));
+                        b.undo();
+                    }
+                }
+            }
+        }, n);
+        final ArenaBoard handle = arena.get(indexes[0]);
+        double offHeap = time(() -> {
+            for (int i = 0; i < n; i++) {
+                ArenaBoard b = handle.moveTo(indexes[i]);
+                for (Piece piece : DefaultBrain.rotations(corpus.getPiece(i))) {
+                    for (int x = 0; x + piece.getWidth() <= b.getWidth(); x++) {
+                        sink[0] += b.place(piece, x, b.dropHeight(piece, x));
+                        b.undo();
+                    }
+                }
+            }
+        }, n);
+        System.out.printf("corpus: all drops placed+undone, Board %.0f ns, ArenaBoard %.0f ns%n", heap, offHeap);
+    }
+}
@@ -1,7 +1,6 @@
 package tetris;
 
 import java.util.Arrays;
-import java.util.Stack;
 
 /**
  * Represents a Tetris board -- essentially a 2-d grid of booleans. Supports
@@ -24,6 +23,30 @@ public class Board {
     private int[] backupWidths;
     private int[] backupHeights;
 
+    /**
+     * Boards up to this wide also keep every row packed in a long, bit x set
+     * when block (x, y) is filled, so that whole rows can be scanned with a
+     * few bit operations (see BoardAnalysis).
+     */
+    public static final int MAX_PACKED_WIDTH = 63;
+
+    private final boolean packed;
+    protected long[] rows;
+    private long[] backupRows;
+
+    // Journal of the changes made since each push(), see push() and pop().
+    // Entries >= 0 are blocks set by place(), as x << 16 | y, and negative
+    // entries are rows removed by clearRows(), as ~y.
+    private int levels;
+    private int[] journal;
+    private int journalSize;
+    private int[] marks;
+    private int[] savedHeights;
+
+    // the last snapshot published, read by other threads, see publish()
+    private volatile BoardSnapshot snapshot;
+    private long version;
+
     /**
      * Creates an empty board of the given width and height measured in blocks.
      */
@@ -41,6 +64,9 @@ public class Board {
         this.backupWidths = new int[height];
         this.backupHeights = new int[width];
 
+        this.packed = width <= MAX_PACKED_WIDTH;
+        this.rows = new long[this.packed ? height : 0];
+        this.backupRows = new long[this.rows.length];
     }
 
     /**
@@ -60,6 +86,15 @@ public class Board {
         //Using Arrays' copyOf method to copy widths and heights
         this.widths = Arrays.copyOf(oldBoard.widths, oldBoard.height);
         this.heights = Arrays.copyOf(oldBoard.heights, oldBoard.width);
+
+        //The backups are copied too, so that undo() and copyFrom() work on the copy
+        this.backupGrid = Arrays.stream(oldBoard.backupGrid).map(boolean[]::clone).toArray(boolean[][]::new);
+        this.backupWidths = Arrays.copyOf(oldBoard.backupWidths, oldBoard.height);
+        this.backupHeights = Arrays.copyOf(oldBoard.backupHeights, oldBoard.width);
+
+        this.packed = oldBoard.packed;
+        this.rows = oldBoard.rows.clone();
+        this.backupRows = oldBoard.backupRows.clone();
     }
 
     public int getWidth() {
@@ -100,8 +135,9 @@ public class Board {
 
         //For every skirt element, we check whats the max delta (at column i + x)
         //and store the y value of it
-        for (int i = 0; i < piece.getSkirt().size(); i++) {
-            int delta = this.heights[i + x] - piece.getSkirt().get(i);
+        final int[] skirt = piece.getSkirtArray();
+        for (int i = 0; i < skirt.length; i++) {
+            int delta = this.heights[i + x] - skirt[i];
             if (delta > y) {
                 y = delta;
             }
@@ -132,6 +168,40 @@ public class Board {
         return this.grid[x][y];
     }
 
+    /**
+     * Returns true if this board keeps packed rows -- i.e. its width is at
+     * most MAX_PACKED_WIDTH.
+     */
+    public boolean isPacked() {
+        return this.packed;
+    }
+
+    /**
+     * Returns row y packed in a long: bit x is set when block (x, y) is
+     * filled. Only valid for packed boards.
+     */
+    public long getRowBits(int y) {
+        return this.rows[y];
+    }
+
+    /**
+     * Returns true if the piece would fit at the given position: inside the
+     * board and not overlapping any filled block. Unlike place(), this does
+     * not touch the board, so it can be called in any state.
+     */
+    public boolean canPlace(Piece piece, int x, int y) {
+        if (x < 0 || y < 0 || x + piece.getWidth() > this.width || y + piece.getHeight() > this.height) {
+            return false;
+        }
+
+        for (TPoint point : piece.getBody()) {
+            if (this.grid[x + point.x][y + point.y]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static final int PLACE_OK = 0;
     public static final int PLACE_ROW_FILLED = 1;
     public static final int PLACE_OUT_BOUNDS = 2;
@@ -152,6 +222,20 @@ public class Board {
      * pre-place state.
      */
     public int place(Piece piece, int x, int y) {
+        int result = placePiece(piece, x, y);
+
+        TetrisEvents.Placement event = new TetrisEvents.Placement();
+        if (event.isEnabled()) {
+            event.x = x;
+            event.y = y;
+            event.result = result;
+            event.maxHeight = getMaxHeight();
+            event.commit();
+        }
+        return result;
+    }
+
+    private int placePiece(Piece piece, int x, int y) {
         //Managing the committed state
         if (!this.committed) {
             throw new RuntimeException("Can only place object if the board has been commited");
@@ -179,6 +263,12 @@ public class Board {
             } else {
                 //Otherwise place the piece aka we flip the value
                 this.grid[cx][cy] = true;
+                if (this.packed) {
+                    this.rows[cy] |= 1L << cx;
+                }
+                if (this.levels > 0) {
+                    record(cx << 16 | cy);
+                }
 
                 //Heights and widths inline update for repainting
                 this.widths[cy]++;
@@ -189,7 +279,11 @@ public class Board {
             }
         }
 
-        updateWidthsHeights();
+        if (this.packed) {
+            updateFromRows();
+        } else {
+            updateWidthsHeights();
+        }
 
         return (rowFilled) ? PLACE_ROW_FILLED : PLACE_OK;
     }
@@ -201,25 +295,38 @@ public class Board {
     public int clearRows() {
         int cleared = 0;
 
-        //Here, we browse through the grid (bottom to top) to see if there are rows to be cleared
-        //If there are, we store the index in a stack ...
-        Stack<Integer> rowsToClear = new Stack<>();
-
-        for (int i = 0; i < this.height; i++) {
-            if (this.widths[i] == this.width) {
-                rowsToClear.push(i);
+        //Here, we browse through the grid from top to bottom, so that dropping
+        //the rows above a cleared one never moves a row we have yet to check;
+        //this code can work with multiple lines to clear, without a stack
+        for (int row = this.height - 1; row >= 0; row--) {
+            if (this.widths[row] != this.width) {
+                continue;
             }
-        }
-
-        //...so that we can pop the indexes in the right order so
-        //this code can work with multiple lines to clear
-        while (!rowsToClear.empty()) {
-            int row = rowsToClear.pop();
             clearOne(row);
             dropFromRow(row);
+            if (this.levels > 0) {
+                record(~row);
+            }
             cleared++;
         }
 
+        if (cleared > 0) {
+            //clearOne() only lowers every height by one, which is wrong for a
+            //column whose top block was in the cleared row with a gap below it,
+            //so the heights are recounted (cheaply, from the packed rows)
+            if (this.packed) {
+                updateFromRows();
+            } else {
+                updateWidthsHeights();
+            }
+
+            TetrisEvents.LineClear event = new TetrisEvents.LineClear();
+            if (event.isEnabled()) {
+                event.rowsCleared = cleared;
+                event.maxHeight = getMaxHeight();
+                event.commit();
+            }
+        }
         return cleared;
     }
 
@@ -237,6 +344,9 @@ public class Board {
         }
 
         this.widths[y] = 0;
+        if (this.packed) {
+            this.rows[y] = 0;
+        }
     }
 
     /**
@@ -254,6 +364,18 @@ public class Board {
             System.arraycopy(this.grid[i], y + 1, this.grid[i], y, this.height - 1 - y);
         }
         System.arraycopy(this.widths, y + 1, this.widths, y, this.height - 1 - y);
+        if (this.packed) {
+            System.arraycopy(this.rows, y + 1, this.rows, y, this.height - 1 - y);
+        }
+
+        //The top row has moved down one, so it is empty now
+        for (int i = 0; i < this.width; i++) {
+            this.grid[i][this.height - 1] = false;
+        }
+        this.widths[this.height - 1] = 0;
+        if (this.packed) {
+            this.rows[this.height - 1] = 0;
+        }
     }
 
     /**
@@ -264,26 +386,170 @@ public class Board {
      */
     public void undo() {
 
-        //Using the same methods as the copy constructor, we revert to the backed uip state
-        //by cpopying the backup arrays
-        this.grid = Arrays.stream(this.backupGrid).map(boolean[]::clone).toArray(boolean[][]::new);
-        this.heights = Arrays.copyOf(this.backupHeights, this.width);
-        this.widths = Arrays.copyOf(this.backupWidths, this.height);
+        //We revert to the backed up state by copying the backup arrays into
+        //the current ones, as commit() does the other way, so nothing is allocated
+        for (int i = 0; i < this.width; i++) {
+            System.arraycopy(this.backupGrid[i], 0, this.grid[i], 0, this.height);
+        }
+        System.arraycopy(this.backupHeights, 0, this.heights, 0, this.width);
+        System.arraycopy(this.backupWidths, 0, this.widths, 0, this.height);
+        System.arraycopy(this.backupRows, 0, this.rows, 0, this.rows.length);
+
+        this.committed = true;
+    }
+
+    /**
+     * Makes this board an exact copy of the given board, which must have the
+     * same size, and leaves it in the committed state. Unlike the copy
+     * constructor, the existing arrays are reused so nothing is allocated --
+     * handy for scratch boards that are refilled over and over.
+     */
+    public void copyFrom(Board other) {
+        if (other.width != this.width || other.height != this.height) {
+            throw new IllegalArgumentException("Can only copy a board of the same size");
+        }
+
+        for (int i = 0; i < this.width; i++) {
+            System.arraycopy(other.grid[i], 0, this.grid[i], 0, this.height);
+            System.arraycopy(other.grid[i], 0, this.backupGrid[i], 0, this.height);
+        }
+        System.arraycopy(other.widths, 0, this.widths, 0, this.height);
+        System.arraycopy(other.widths, 0, this.backupWidths, 0, this.height);
+        System.arraycopy(other.heights, 0, this.heights, 0, this.width);
+        System.arraycopy(other.heights, 0, this.backupHeights, 0, this.width);
+        System.arraycopy(other.rows, 0, this.rows, 0, this.rows.length);
+        System.arraycopy(other.rows, 0, this.backupRows, 0, this.rows.length);
+
+        this.levels = 0;
+        this.journalSize = 0;
+        this.committed = true;
+    }
+
+    /**
+     * Starts a new level of changes that pop() can take back, for depth
+     * first searches that place several pieces in a row and then back out:
+     * <pre>
+     * board.push();
+     * board.place(piece, x, y);
+     * board.clearRows();
+     * ... recurse: push(), place(), clearRows() ..., pop()
+     * board.pop(); // back to the state at push()
+     * </pre>
+     * Levels nest to any depth. Each push() puts the board in a committed
+     * state, so place() may be called again, without copying anything: only
+     * the blocks placed and the rows cleared are recorded, and pop() reverts
+     * them one by one. Don't mix this with undo() inside a level.
+     */
+    public void push() {
+        if (this.journal == null) {
+            this.journal = new int[64];
+            this.marks = new int[8];
+            this.savedHeights = new int[8 * this.width];
+        }
+        if (this.levels == this.marks.length) {
+            this.marks = Arrays.copyOf(this.marks, 2 * this.levels);
+            this.savedHeights = Arrays.copyOf(this.savedHeights, 2 * this.levels * this.width);
+        }
+
+        this.marks[this.levels] = this.journalSize;
+        System.arraycopy(this.heights, 0, this.savedHeights, this.levels * this.width, this.width);
+        this.levels++;
+        this.committed = true;
+    }
+
+    /**
+     * Reverts every place() and clearRows() since the matching push(), in
+     * O(blocks placed + rows moved), and leaves the board committed.
+     */
+    public void pop() {
+        if (this.levels == 0) {
+            throw new RuntimeException("pop() without a matching push()");
+        }
+        this.levels--;
+
+        final int mark = this.marks[this.levels];
+        while (this.journalSize > mark) {
+            int entry = this.journal[--this.journalSize];
+            if (entry >= 0) {
+                unsetBlock(entry >>> 16, entry & 0xffff);
+            } else {
+                restoreRow(~entry);
+            }
+        }
 
+        System.arraycopy(this.savedHeights, this.levels * this.width, this.heights, 0, this.width);
         this.committed = true;
     }
 
+    /**
+     * Returns the number of push() levels not yet popped.
+     */
+    public int getLevels() {
+        return this.levels;
+    }
+
+    private void record(int entry) {
+        if (this.journalSize == this.journal.length) {
+            this.journal = Arrays.copyOf(this.journal, 2 * this.journalSize);
+        }
+        this.journal[this.journalSize++] = entry;
+    }
+
+    private void unsetBlock(int x, int y) {
+        this.grid[x][y] = false;
+        this.widths[y]--;
+        if (this.packed) {
+            this.rows[y] &= ~(1L << x);
+        }
+    }
+
+    // the reverse of clearOne() + dropFromRow(): the row was full
+    private void restoreRow(int y) {
+        for (int i = 0; i < this.width; i++) {
+            System.arraycopy(this.grid[i], y, this.grid[i], y + 1, this.height - 1 - y);
+            this.grid[i][y] = true;
+        }
+        System.arraycopy(this.widths, y, this.widths, y + 1, this.height - 1 - y);
+        this.widths[y] = this.width;
+        if (this.packed) {
+            System.arraycopy(this.rows, y, this.rows, y + 1, this.height - 1 - y);
+            this.rows[y] = (1L << this.width) - 1;
+        }
+    }
+
+    /**
+     * Makes an immutable snapshot of the board as it is now -- committed or
+     * not -- and publishes it for getSnapshot(). Only the thread playing the
+     * board should call this; the snapshot itself can then be read from any
+     * thread.
+     */
+    public BoardSnapshot publish() {
+        BoardSnapshot snapshot = new BoardSnapshot(this, ++this.version);
+        this.snapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Returns the last snapshot published, or null if there is none. Safe
+     * to call from any thread, without locking.
+     */
+    public BoardSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
     /**
      * Puts the board in the committed state.
      */
     public void commit() {
 
-        //We create a copy instance of the board and assign the right variables
-        Board backup = new Board(this);
-
-        this.backupGrid = backup.grid;
-        this.backupHeights = backup.heights;
-        this.backupWidths = backup.widths;
+        //We copy the current state into the backup arrays, which are reused
+        //rather than reallocated on every commit
+        for (int i = 0; i < this.width; i++) {
+            System.arraycopy(this.grid[i], 0, this.backupGrid[i], 0, this.height);
+        }
+        System.arraycopy(this.heights, 0, this.backupHeights, 0, this.width);
+        System.arraycopy(this.widths, 0, this.backupWidths, 0, this.height);
+        System.arraycopy(this.rows, 0, this.backupRows, 0, this.rows.length);
 
         this.committed = true;
     }
@@ -311,7 +577,24 @@ public class Board {
         return buff.toString();
     }
 
+    /**
+     * Recomputes widths and heights (and the packed rows) from the grid.
+     */
     protected void updateWidthsHeights() {
+        if (this.packed) {
+            for (int j = 0; j < this.height; j++) {
+                long row = 0;
+                for (int i = 0; i < this.width; i++) {
+                    if (this.grid[i][j]) {
+                        row |= 1L << i;
+                    }
+                }
+                this.rows[j] = row;
+            }
+            updateFromRows();
+            return;
+        }
+
         Arrays.fill(this.widths, 0);
         Arrays.fill(this.heights, 0);
 
@@ -324,4 +607,27 @@ public class Board {
             }
         }
     }
+
+    /*
+     * Same as updateWidthsHeights() for packed boards whose rows are up to
+     * date, but a row at a time: a row's width is its bit count, and walking
+     * down from the top, the first row where a column's bit shows up gives
+     * that column's height.
+     */
+    private void updateFromRows() {
+        Arrays.fill(this.heights, 0);
+
+        long seen = 0;
+        for (int j = this.height - 1; j >= 0; j--) {
+            long row = this.rows[j];
+            this.widths[j] = Long.bitCount(row);
+
+            long found = row & ~seen;
+            seen |= found;
+            while (found != 0) {
+                this.heights[Long.numberOfTrailingZeros(found)] = j + 1;
+                found &= found - 1;
+            }
+        }
+    }
 }
@@ -0,0 +1,224 @@
+// BoardAnalysis.java
+
+package tetris;
+
+/**
+ * Computes BoardFeatures for a board. There are two implementations of each
+ * scan: a scalar one that walks the grid block by block, and a packed one
+ * that works on the board's packed rows (Board.getRowBits()) and handles a
+ * whole row -- every column at once -- with a few bit operations, e.g. the
+ * holes under a row are bitCount(covered & ~row) where covered is the OR of
+ * all the rows above.
+ * <p>
+ * The packed path is used for every packed board unless the system property
+ * tetris.analysis is set to "scalar" at startup. Both give identical
+ * results; Benchmark compares their speed.
+ */
+public final class BoardAnalysis {
+
+    /**
+     * True if the packed scans are in use, chosen once at startup.
+     */
+    public static final boolean PACKED = !"scalar".equals(System.getProperty("tetris.analysis"));
+
+    private BoardAnalysis() {
+    }
+
+    /**
+     * Fills in all the features of the given board.
+     */
+    public static void analyze(Board board, BoardFeatures features) {
+        if (PACKED && board.isPacked()) {
+            analyzePacked(board, features);
+        } else {
+            analyzeScalar(board, features);
+        }
+    }
+
+    /**
+     * Counts the empty blocks that have a filled block somewhere above them
+     * in the same column.
+     */
+    public static int countHoles(Board board) {
+        if (PACKED && board.isPacked()) {
+            return countHolesPacked(board, board.getMaxHeight());
+        } else {
+            return countHolesScalar(board);
+        }
+    }
+
+    /*
+     * The features one at a time, for evaluators that only need some of
+     * them (see EvaluatorCompiler). analyze() is cheaper when most are
+     * needed, as it gets them all in one pass. Unpacked boards take the slow
+     * way, through analyzeScalar().
+     */
+
+    public static int sumHeight(Board board) {
+        int sum = 0;
+        for (int x = 0; x < board.getWidth(); x++) {
+            sum += board.getColumnHeight(x);
+        }
+        return sum;
+    }
+
+    public static int bumpiness(Board board) {
+        int bumpiness = 0;
+        for (int x = 1; x < board.getWidth(); x++) {
+            bumpiness += Math.abs(board.getColumnHeight(x) - board.getColumnHeight(x - 1));
+        }
+        return bumpiness;
+    }
+
+    public static int rowTransitions(Board board) {
+        if (!(PACKED && board.isPacked())) {
+            BoardFeatures features = new BoardFeatures();
+            analyzeScalar(board, features);
+            return features.rowTransitions;
+        }
+
+        final int width = board.getWidth();
+        final long mask = (1L << (width + 1)) - 1;
+        final long rightWall = 1L << width;
+        int transitions = 0;
+        for (int y = board.getMaxHeight() - 1; y >= 0; y--) {
+            long row = board.getRowBits(y);
+            transitions += Long.bitCount(((row | rightWall) ^ ((row << 1) | 1)) & mask);
+        }
+        return transitions;
+    }
+
+    public static int columnTransitions(Board board) {
+        if (!(PACKED && board.isPacked())) {
+            BoardFeatures features = new BoardFeatures();
+            analyzeScalar(board, features);
+            return features.columnTransitions;
+        }
+
+        final int top = board.getMaxHeight();
+        long below = (1L << board.getWidth()) - 1;
+        int transitions = 0;
+        for (int y = 0; y < top; y++) {
+            long row = board.getRowBits(y);
+            transitions += Long.bitCount(row ^ below);
+            below = row;
+        }
+        if (top < board.getHeight()) {
+            transitions += Long.bitCount(below);
+        }
+        return transitions;
+    }
+
+    private static int countHolesPacked(Board board, int top) {
+        long covered = 0;
+        int holes = 0;
+        for (int y = top - 1; y >= 0; y--) {
+            long row = board.getRowBits(y);
+            holes += Long.bitCount(covered & ~row);
+            covered |= row;
+        }
+        return holes;
+    }
+
+    private static int countHolesScalar(Board board) {
+        int holes = 0;
+        for (int x = 0; x < board.getWidth(); x++) {
+            for (int y = board.getColumnHeight(x) - 2; y >= 0; y--) {
+                if (!board.getGrid(x, y)) {
+                    holes++;
+                }
+            }
+        }
+        return holes;
+    }
+
+    // height sums and bumpiness only need the column heights
+    private static void heightFeatures(Board board, BoardFeatures features) {
+        final int width = board.getWidth();
+        int max = 0;
+        int sum = 0;
+        int bumpiness = 0;
+        int previous = board.getColumnHeight(0);
+        for (int x = 0; x < width; x++) {
+            int height = board.getColumnHeight(x);
+            sum += height;
+            max = Math.max(max, height);
+            bumpiness += Math.abs(height - previous);
+            previous = height;
+        }
+        features.maxHeight = max;
+        features.sumHeight = sum;
+        features.bumpiness = bumpiness;
+    }
+
+    static void analyzePacked(Board board, BoardFeatures features) {
+        heightFeatures(board, features);
+
+        final int width = board.getWidth();
+        final long full = (1L << width) - 1;
+        final long rightWall = 1L << width;
+        final int top = features.maxHeight;
+
+        int rowTransitions = 0;
+        int columnTransitions = 0;
+        long below = full; // the floor
+
+        for (int y = 0; y < top; y++) {
+            long row = board.getRowBits(y);
+
+            // bit x of the left side is block x - 1, with the left wall at bit 0
+            long left = (row << 1) | 1;
+            rowTransitions += Long.bitCount(((row | rightWall) ^ left) & (full | rightWall));
+            columnTransitions += Long.bitCount(row ^ below);
+            below = row;
+        }
+        if (top < board.getHeight()) {
+            columnTransitions += Long.bitCount(below); // tops of the columns
+        }
+
+        features.holes = countHolesPacked(board, top);
+        features.rowTransitions = rowTransitions;
+        features.columnTransitions = columnTransitions;
+    }
+
+    static void analyzeScalar(Board board, BoardFeatures features) {
+        heightFeatures(board, features);
+
+        final int width = board.getWidth();
+        final int top = features.maxHeight;
+
+        int rowTransitions = 0;
+        for (int y = 0; y < top; y++) {
+            boolean previous = true; // the left wall
+            for (int x = 0; x < width; x++) {
+                boolean filled = board.getGrid(x, y);
+                if (filled != previous) {
+                    rowTransitions++;
+                }
+                previous = filled;
+            }
+            if (!previous) {
+                rowTransitions++; // the right wall
+            }
+        }
+
+        int columnTransitions = 0;
+        for (int x = 0; x < width; x++) {
+            boolean previous = true; // the floor
+            for (int y = 0; y < top; y++) {
+                boolean filled = board.getGrid(x, y);
+                if (filled != previous) {
+                    columnTransitions++;
+                }
+                previous = filled;
+            }
+            if (previous && top < board.getHeight()) {
+                columnTransitions++;
+            }
+        }
+
+        features.holes = countHolesScalar(board);
+        features.rowTransitions = rowTransitions;
+        features.columnTransitions = columnTransitions;
+    }
+}
@@ -0,0 +1,72 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoardAnalysisTest {
+
+    private static void assertSameFeatures(Board b) {
+        BoardFeatures scalar = new BoardFeatures();
+        BoardFeatures packed = new BoardFeatures();
+        BoardAnalysis.analyzeScalar(b, scalar);
+        BoardAnalysis.analyzePacked(b, packed);
+
+        assertEquals(scalar.maxHeight, packed.maxHeight);
+        assertEquals(scalar.sumHeight, packed.sumHeight);
+        assertEquals(scalar.holes, packed.holes);
+        assertEquals(scalar.rowTransitions, packed.rowTransitions);
+        assertEquals(scalar.columnTransitions, packed.columnTransitions);
+        assertEquals(scalar.bumpiness, packed.bumpiness);
+    }
+
+    @Test
+    public void testEmpty() {
+        Board b = new Board(10, 24);
+        BoardFeatures f = new BoardFeatures();
+        BoardAnalysis.analyzePacked(b, f);
+
+        assertEquals(0, f.holes);
+        assertEquals(0, f.rowTransitions);
+        assertEquals(10, f.columnTransitions);
+        assertSameFeatures(b);
+    }
+
+    @Test
+    public void testSmall() {
+        Board b = new Board(4, 6);
+        b.place(new Piece(Piece.S1_STR), 0, 0);
+        b.commit();
+        b.place(new Piece(Piece.SQUARE_STR), 2, 2);
+        b.commit();
+
+        BoardFeatures f = new BoardFeatures();
+        BoardAnalysis.analyzePacked(b, f);
+        assertEquals(4, f.maxHeight);
+        assertEquals(3, f.holes); // (2,0), (3,0) and (3,1)
+        assertSameFeatures(b);
+    }
+
+    @Test
+    public void testSelfPlayBoards() {
+        for (Board b : Benchmark.sampleBoards(200, 10, 24, 5)) {
+            assertSameFeatures(b);
+        }
+        for (Board b : Benchmark.sampleBoards(50, 60, 30, 5)) {
+            assertSameFeatures(b);
+        }
+    }
+
+    @Test
+    public void testHeightsAfterClear() {
+        // the top block of column 0 sits in the cleared row, with a gap below
+        Board b = new Board(3, 6);
+        b.place(new Piece("0 0 0 2 1 2 2 2"), 0, 0);
+        b.commit();
+
+        assertEquals(1, b.clearRows());
+        assertEquals(1, b.getColumnHeight(0));
+        assertEquals(0, b.getColumnHeight(1));
+        assertEquals(1, b.getMaxHeight());
+    }
+}
@@ -0,0 +1,136 @@
+// BoardArena.java
+
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Many boards of one size, stored one after the other in a single direct
+ * (off-heap) buffer, for batch runs that keep huge numbers of boards alive.
+ * A Board is a dozen heap arrays; a board in the arena is a fixed slot of
+ * getBytesPerBoard() bytes -- 408 for a standard 10x24 board -- and the
+ * only heap object is the arena itself, so the GC has nothing to scan
+ * however many boards it holds.
+ * <p>
+ * Each slot holds, in order: the packed rows (one long per row, as in
+ * Board.getRowBits()), their backup for undo(), the column heights (one
+ * byte each) and their backup, and the committed flag. Row widths are just
+ * bit counts so they are not stored.
+ * <p>
+ * Slots are handed out by allocate() and given back by free(); boards are
+ * worked on through ArenaBoard handles, see get(). An arena is not thread
+ * safe, but distinct boards may be used from distinct threads once
+ * allocated.
+ */
+public class BoardArena {
+
+    private final int width;
+    private final int height;
+    private final int capacity;
+    private final int bytesPerBoard;
+    private final ByteBuffer buffer;
+
+    // stack of free slots, the next one to hand out on top
+    private final int[] free;
+    private int freeCount;
+
+    /**
+     * Creates an arena for up to capacity boards of the given size. Width is
+     * at most Board.MAX_PACKED_WIDTH, height at most 127, and the whole arena
+     * must fit in 2GB.
+     */
+    public BoardArena(int width, int height, int capacity) {
+        if (width < 1 || width > Board.MAX_PACKED_WIDTH || height < 1 || height > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported board size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.capacity = capacity;
+
+        // rows and backup rows, heights and backup heights, committed flag,
+        // rounded up so the rows of every slot stay 8-byte aligned
+        int bytes = 2 * 8 * height + 2 * width + 1;
+        this.bytesPerBoard = (bytes + 7) & ~7;
+        if (capacity < 0 || (long) capacity * this.bytesPerBoard > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported capacity " + capacity);
+        }
+
+        this.buffer = ByteBuffer.allocateDirect(capacity * this.bytesPerBoard).order(ByteOrder.nativeOrder());
+        this.free = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.free[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of boards currently allocated.
+     */
+    public int getSize() {
+        return this.capacity - this.freeCount;
+    }
+
+    /**
+     * Returns the number of off-heap bytes each board takes.
+     */
+    public int getBytesPerBoard() {
+        return this.bytesPerBoard;
+    }
+
+    /**
+     * Allocates an empty, committed board and returns its index. Throws a
+     * RuntimeException when the arena is full.
+     */
+    public int allocate() {
+        if (this.freeCount == 0) {
+            throw new RuntimeException("Board arena full (" + this.capacity + " boards)");
+        }
+        int index = this.free[--this.freeCount];
+        get(index).clear();
+        return index;
+    }
+
+    /**
+     * Gives the board at index back to the arena. Handles on it must not be
+     * used afterwards.
+     */
+    public void free(int index) {
+        if (index < 0 || index >= this.capacity || this.freeCount == this.capacity) {
+            throw new IllegalArgumentException("Bad board index " + index);
+        }
+        this.free[this.freeCount++] = index;
+    }
+
+    /**
+     * Returns a handle on the allocated board at index. Handles are small and
+     * can be pointed at other boards with ArenaBoard.moveTo(), so a loop over
+     * many boards needs only one.
+     */
+    public ArenaBoard get(int index) {
+        return new ArenaBoard(this, index);
+    }
+
+    ByteBuffer buffer() {
+        return this.buffer;
+    }
+
+    int offset(int index) {
+        if (index < 0 || index >= this.capacity) {
+            throw new IllegalArgumentException("Bad board index " + index);
+        }
+        return index * this.bytesPerBoard;
+    }
+}
@@ -0,0 +1,112 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BoardArenaTest {
+
+    private static void assertSameBoard(Board expected, ArenaBoard actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            assertEquals(expected.getRowBits(y), actual.getRowBits(y));
+            assertEquals(expected.getRowWidth(y), actual.getRowWidth(y));
+        }
+        for (int x = 0; x < expected.getWidth(); x++) {
+            assertEquals(expected.getColumnHeight(x), actual.getColumnHeight(x));
+        }
+        assertEquals(expected.getMaxHeight(), actual.getMaxHeight());
+    }
+
+    @Test
+    public void testAllocate() {
+        BoardArena arena = new BoardArena(10, 24, 3);
+        assertEquals(408, arena.getBytesPerBoard());
+
+        int a = arena.allocate();
+        int b = arena.allocate();
+        arena.get(a).place(new Piece(Piece.SQUARE_STR), 0, 0);
+        assertEquals(2, arena.get(a).getMaxHeight());
+        assertEquals(0, arena.get(b).getMaxHeight());
+        assertEquals(2, arena.getSize());
+
+        // a freed board comes back empty
+        arena.free(a);
+        assertEquals(a, arena.allocate());
+        assertEquals(0, arena.get(a).getMaxHeight());
+
+        arena.allocate();
+        try {
+            arena.allocate();
+            fail("arena should be full");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void testPlaceClearUndo() {
+        BoardArena arena = new BoardArena(4, 8, 1);
+        ArenaBoard b = arena.get(arena.allocate());
+
+        assertEquals(Board.PLACE_OK, b.place(new Piece(Piece.PYRAMID_STR), 0, 0));
+        b.commit();
+        assertEquals(Board.PLACE_ROW_FILLED, b.place(new Piece(Piece.STICK_STR), 3, 0));
+        assertEquals(1, b.clearRows());
+        assertEquals(3, b.getMaxHeight());
+        assertEquals(2, b.getRowWidth(0));
+        assertEquals(1, b.getColumnHeight(1));
+
+        b.undo();
+        assertEquals(2, b.getMaxHeight());
+        assertEquals(3, b.getRowWidth(0));
+        assertEquals(1, b.getRowWidth(1));
+
+        b.commit();
+        assertEquals(Board.PLACE_BAD, b.place(new Piece(Piece.PYRAMID_STR), 0, 0));
+        b.undo();
+        try {
+            b.place(new Piece(Piece.SQUARE_STR), 0, 2);
+            b.place(new Piece(Piece.SQUARE_STR), 0, 4);
+            fail("place() needs a commit first");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void testSameAsBoard() {
+        // random placements, clears and undos in lockstep with a Board
+        Random random = new Random(3);
+        Piece[] pieces = Piece.getPieces();
+        BoardArena arena = new BoardArena(7, 14, 2);
+        ArenaBoard b = arena.get(arena.allocate());
+        Board expected = new Board(7, 14);
+
+        for (int i = 0; i < 5000; i++) {
+            Piece piece = pieces[random.nextInt(pieces.length)];
+            int x = random.nextInt(expected.getWidth() - piece.getWidth() + 1);
+            int y = expected.dropHeight(piece, x);
+            assertEquals(y, b.dropHeight(piece, x));
+
+            int result = expected.place(piece, x, y);
+            assertEquals(result, b.place(piece, x, y));
+            if (result > Board.PLACE_ROW_FILLED || random.nextInt(5) == 0) {
+                expected.undo();
+                b.undo();
+            } else {
+                assertEquals(expected.clearRows(), b.clearRows());
+                expected.commit();
+                b.commit();
+            }
+            assertSameBoard(expected, b);
+        }
+
+        // and a copy in another slot is the same board
+        ArenaBoard copy = arena.get(arena.allocate());
+        copy.copyFrom(b);
+        assertSameBoard(expected, copy);
+        Board back = new Board(7, 14);
+        copy.copyTo(back);
+        assertSameBoard(back, b);
+    }
+}
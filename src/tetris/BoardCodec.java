@@ -0,0 +1,189 @@
+// BoardCodec.java
+
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compact binary form of a Board: the width and height in a byte each,
+ * then the grid as one run of width * height bits, row 0 first and column 0
+ * first within a row, in little-endian bit order -- bit i of the run is bit
+ * i % 8 of byte i / 8. A standard 10x24 board takes 32 bytes. Heights and
+ * widths are not stored; they are recounted when decoding.
+ * <p>
+ * Encodings have a fixed size for a given board size, so they can live in
+ * fixed slots of a file (see Checkpoint), and hash() works on an encoding
+ * in place -- e.g. in a memory-mapped file -- as well as on a Board, with
+ * the same result. Only packed boards (Board.MAX_PACKED_WIDTH wide or less)
+ * and heights up to 255 are supported.
+ */
+public final class BoardCodec {
+
+    private BoardCodec() {
+    }
+
+    /**
+     * Returns the size in bytes of the encoding of a board of the given size.
+     */
+    public static int size(int width, int height) {
+        return 2 + (width * height + 7) / 8;
+    }
+
+    /**
+     * Writes the board's encoding at the buffer's position, and moves the
+     * position past it.
+     */
+    public static void encode(Board board, ByteBuffer out) {
+        final int width = board.getWidth();
+        final int height = board.getHeight();
+        if (!board.isPacked() || height > 255) {
+            throw new IllegalArgumentException("Board too big to encode");
+        }
+        out.put((byte) width);
+        out.put((byte) height);
+
+        int remaining = (width * height + 7) / 8;
+        long bits = 0; // not yet written, lowest first
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            long row = board.getRowBits(y);
+            bits |= row << count;
+            if (count + width >= 64) {
+                putBytes(out, bits, 8);
+                remaining -= 8;
+                // the part of the row that didn't fit (none if count is 0)
+                bits = (count == 0) ? 0 : row >>> (64 - count);
+                count = count + width - 64;
+            } else {
+                count += width;
+            }
+        }
+        putBytes(out, bits, remaining);
+    }
+
+    /**
+     * Reads an encoding at the buffer's position into the given board, which
+     * must have the same size, and moves the position past it. The board is
+     * left committed.
+     */
+    public static void decode(ByteBuffer in, Board board) {
+        decode(in, in.position(), board);
+        in.position(in.position() + size(board.getWidth(), board.getHeight()));
+    }
+
+    /**
+     * Reads the encoding at the given index of the buffer into the given
+     * board, like decode() above but without moving the buffer's position,
+     * so a shared read-only mapping can be decoded from without duplicating
+     * it.
+     */
+    public static void decode(ByteBuffer in, int index, Board board) {
+        final int width = in.get(index) & 0xff;
+        final int height = in.get(index + 1) & 0xff;
+        if (width != board.getWidth() || height != board.getHeight()) {
+            throw new IllegalArgumentException("Encoded board is " + width + "x" + height);
+        }
+
+        final long mask = (1L << width) - 1;
+        int at = index + 2;
+        int remaining = (width * height + 7) / 8;
+        long bits = 0; // read but not yet used, lowest first
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            long row;
+            if (count >= width) {
+                row = bits & mask;
+                bits >>>= width;
+                count -= width;
+            } else {
+                int n = Math.min(8, remaining);
+                long word = getBytes(in, at, n);
+                at += n;
+                remaining -= n;
+                row = (bits | (word << count)) & mask;
+                // what is left of the word once the row is taken
+                bits = (width - count == 64) ? 0 : word >>> (width - count);
+                count = count + 8 * n - width;
+            }
+            for (int x = 0; x < width; x++) {
+                board.grid[x][y] = (row & (1L << x)) != 0;
+            }
+        }
+        board.updateWidthsHeights();
+        board.commit();
+    }
+
+    /**
+     * Returns a 64-bit hash of the board's grid, the same as hash() of its
+     * encoding.
+     */
+    public static long hash(Board board) {
+        final int width = board.getWidth();
+        long hash = start(width, board.getHeight());
+        long bits = 0;
+        int count = 0;
+        for (int y = 0; y < board.getHeight(); y++) {
+            long row = board.getRowBits(y);
+            bits |= row << count;
+            if (count + width >= 64) {
+                hash = mix(hash, bits);
+                bits = (count == 0) ? 0 : row >>> (64 - count);
+                count = count + width - 64;
+            } else {
+                count += width;
+            }
+        }
+        if (count > 0) {
+            hash = mix(hash, bits);
+        }
+        return finish(hash);
+    }
+
+    /**
+     * Returns the hash of the encoding at the given index of the buffer,
+     * reading it in place, without decoding and without moving the
+     * buffer's position.
+     */
+    public static long hash(ByteBuffer in, int index) {
+        final int width = in.get(index) & 0xff;
+        final int height = in.get(index + 1) & 0xff;
+        long hash = start(width, height);
+        int at = index + 2;
+        int remaining = (width * height + 7) / 8;
+        while (remaining > 0) {
+            int n = Math.min(8, remaining);
+            hash = mix(hash, getBytes(in, at, n));
+            at += n;
+            remaining -= n;
+        }
+        return finish(hash);
+    }
+
+    private static long start(int width, int height) {
+        return (width * 31L + height) * 0x9E3779B97F4A7C15L;
+    }
+
+    private static long mix(long hash, long word) {
+        return (hash ^ word) * 0xBF58476D1CE4E5B9L + 0x94D049BB133111EBL;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 31;
+        hash *= 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static void putBytes(ByteBuffer out, long bits, int n) {
+        for (int i = 0; i < n; i++) {
+            out.put((byte) (bits >>> (8 * i)));
+        }
+    }
+
+    private static long getBytes(ByteBuffer in, int index, int n) {
+        long word = 0;
+        for (int i = 0; i < n; i++) {
+            word |= (in.get(index + i) & 0xffL) << (8 * i);
+        }
+        return word;
+    }
+}
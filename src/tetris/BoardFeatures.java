@@ -0,0 +1,25 @@
+// BoardFeatures.java
+
+package tetris;
+
+/**
+ * The usual numbers brains rate a board with, as filled in by
+ * BoardAnalysis.analyze(). Used as a struct, like Brain.Move, so one
+ * instance can be reused for every board rated.
+ */
+public class BoardFeatures {
+    public int maxHeight;
+    public int sumHeight;
+
+    // empty blocks with a filled block somewhere above them
+    public int holes;
+
+    // filled/empty changes between side by side blocks, walls count as filled
+    public int rowTransitions;
+
+    // filled/empty changes between stacked blocks, the floor counts as filled
+    public int columnTransitions;
+
+    // sum of the height differences between neighbouring columns
+    public int bumpiness;
+}
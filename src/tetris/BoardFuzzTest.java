@@ -0,0 +1,90 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BoardFuzzTest {
+
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 10;
+
+    @Test
+    public void testArenaBoard() {
+        final BoardArena arena = new BoardArena(WIDTH, HEIGHT, 1);
+        final int slot = arena.allocate();
+        BoardFuzzer fuzzer = new BoardFuzzer(WIDTH, HEIGHT, () -> {
+            ArenaBoard board = arena.get(slot);
+            board.copyFrom(new Board(WIDTH, HEIGHT));
+            return BoardFuzzer.of(board);
+        });
+        List<BoardFuzzer.Op> failure = fuzzer.fuzz(1, 2000, 200);
+        assertNull(failure == null ? null : fuzzer.check(failure), failure);
+    }
+
+    @Test
+    public void testJournaledBoard() {
+        BoardFuzzer fuzzer = new BoardFuzzer(WIDTH, HEIGHT, () -> BoardFuzzer.journaled(new Board(WIDTH, HEIGHT)));
+        List<BoardFuzzer.Op> failure = fuzzer.fuzz(2, 2000, 200);
+        assertNull(failure == null ? null : fuzzer.check(failure), failure);
+    }
+
+    @Test
+    public void testShrink() {
+        // a board that gets multi-row clears wrong
+        BoardFuzzer fuzzer = new BoardFuzzer(WIDTH, HEIGHT, () -> {
+            final BoardFuzzer.Subject board = BoardFuzzer.of(new Board(WIDTH, HEIGHT));
+            return new BoardFuzzer.Subject() {
+                public int place(Piece piece, int x, int y) {
+                    return board.place(piece, x, y);
+                }
+
+                public int clearRows() {
+                    return Math.min(1, board.clearRows());
+                }
+
+                public void commit() {
+                    board.commit();
+                }
+
+                public void undo() {
+                    board.undo();
+                }
+
+                public int dropHeight(Piece piece, int x) {
+                    return board.dropHeight(piece, x);
+                }
+
+                public long getRowBits(int y) {
+                    return board.getRowBits(y);
+                }
+
+                public int getRowWidth(int y) {
+                    return board.getRowWidth(y);
+                }
+
+                public int getColumnHeight(int x) {
+                    return board.getColumnHeight(x);
+                }
+
+                public int getMaxHeight() {
+                    return board.getMaxHeight();
+                }
+            };
+        });
+
+        List<BoardFuzzer.Op> failure = fuzzer.fuzz(3, 2000, 200);
+        assertNotNull(failure);
+        assertNotNull(fuzzer.check(failure));
+        // at least two pieces and a clear, and nothing that can go
+        assertTrue(failure.size() >= 3);
+        assertTrue(failure.toString(), failure.size() <= 8);
+        for (int i = 0; i < failure.size(); i++) {
+            List<BoardFuzzer.Op> shorter = new java.util.ArrayList<>(failure);
+            shorter.remove(i);
+            assertNull(fuzzer.check(shorter));
+        }
+    }
+}
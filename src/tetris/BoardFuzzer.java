@@ -0,0 +1,491 @@
+// BoardFuzzer.java
+
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Differential fuzzing of faster boards against Board. Random sequences of
+ * place(), clearRows(), commit() and undo() run on a Board (the reference)
+ * and on a candidate in lockstep. After every operation, the results must
+ * match -- PLACE_ codes, clearRows() counts, dropHeight(), and whether an
+ * exception was thrown -- and so must the whole state: every packed row,
+ * row width and column height, and the max height.
+ * <p>
+ * After a failed place() the board is in an unspecified state until
+ * undo(), so until then the other operations are skipped and nothing is
+ * compared. Operations don't depend on the state they run in, so any
+ * sub-sequence of a sequence can be run too; a failing sequence is shrunk
+ * to a minimal one by deleting operations, in ever smaller chunks, for as
+ * long as it keeps failing.
+ * <p>
+ * Candidates are wrapped in the Subject interface; of() and journaled()
+ * wrap ArenaBoard and Board's push()/pop() undo. From the command line,
+ * <pre>
+ * java tetris.BoardFuzzer [operations [seed]]
+ * </pre>
+ * fuzzes both for about that many operations each and prints the first
+ * divergence found, shrunk.
+ */
+public class BoardFuzzer {
+
+    /**
+     * The board operations the fuzzer drives. Same meaning as in Board.
+     */
+    public interface Subject {
+        public int place(Piece piece, int x, int y);
+
+        public int clearRows();
+
+        public void commit();
+
+        public void undo();
+
+        public int dropHeight(Piece piece, int x);
+
+        public long getRowBits(int y);
+
+        public int getRowWidth(int y);
+
+        public int getColumnHeight(int x);
+
+        public int getMaxHeight();
+    }
+
+    public static final int PLACE = 0; // at the given x and y
+    public static final int DROP = 1;  // at the given x, at dropHeight()
+    public static final int CLEAR = 2;
+    public static final int COMMIT = 3;
+    public static final int UNDO = 4;
+
+    /**
+     * One operation of a sequence.
+     */
+    public static final class Op {
+        public final int kind;
+        public final int piece; // index in the fuzzer's list of rotations
+        public final int x;
+        public final int y;
+
+        public Op(int kind, int piece, int x, int y) {
+            this.kind = kind;
+            this.piece = piece;
+            this.x = x;
+            this.y = y;
+        }
+
+        public String toString() {
+            switch (this.kind) {
+                case PLACE:
+                    return "place(" + ROTATION_NAMES.get(this.piece) + ", " + this.x + ", " + this.y + ")";
+                case DROP:
+                    return "drop(" + ROTATION_NAMES.get(this.piece) + ", " + this.x + ")";
+                case CLEAR:
+                    return "clearRows()";
+                case COMMIT:
+                    return "commit()";
+                default:
+                    return "undo()";
+            }
+        }
+    }
+
+    // every rotation of every piece, and a name for each
+    private static final List<Piece> ROTATIONS = new ArrayList<>();
+    private static final List<String> ROTATION_NAMES = new ArrayList<>();
+
+    static {
+        String[] names = {"STICK", "L1", "L2", "S1", "S2", "SQUARE", "PYRAMID"};
+        Piece[] pieces = Piece.getPieces();
+        for (int i = 0; i < pieces.length; i++) {
+            Piece piece = pieces[i];
+            int n = 0;
+            do {
+                ROTATIONS.add(piece);
+                ROTATION_NAMES.add(names[i] + "/" + n++);
+                piece = piece.computeNextRotation();
+            } while (!piece.equals(pieces[i]));
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final Supplier<Subject> candidates;
+    private long operations;
+
+    /**
+     * Creates a fuzzer for boards of the given size, at most
+     * Board.MAX_PACKED_WIDTH wide, with candidates -- fresh, empty boards of
+     * that size -- from the given supplier.
+     */
+    public BoardFuzzer(int width, int height, Supplier<Subject> candidates) {
+        if (width > Board.MAX_PACKED_WIDTH) {
+            throw new IllegalArgumentException("Board too wide to fuzz");
+        }
+        this.width = width;
+        this.height = height;
+        this.candidates = candidates;
+    }
+
+    /**
+     * Returns the number of operations run so far, shrinking included.
+     */
+    public long getOperations() {
+        return this.operations;
+    }
+
+    /**
+     * Runs count sequences of the given length, seeded from seed. Returns
+     * null if the candidate always agreed with Board, otherwise the first
+     * failing sequence, shrunk.
+     */
+    public List<Op> fuzz(long seed, int count, int length) {
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            List<Op> ops = generate(random, length);
+            if (check(ops) != null) {
+                return shrink(ops);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a random sequence of operations. Placements are mostly drops,
+     * some at random positions, a few of them out of bounds.
+     */
+    public List<Op> generate(Random random, int length) {
+        List<Op> ops = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            int roll = random.nextInt(20);
+            int piece = random.nextInt(ROTATIONS.size());
+            int pieceWidth = ROTATIONS.get(piece).getWidth();
+            if (roll < 9) {
+                ops.add(new Op(DROP, piece, random.nextInt(this.width - pieceWidth + 1), 0));
+            } else if (roll < 12) {
+                ops.add(new Op(PLACE, piece, random.nextInt(this.width + 2) - 1, random.nextInt(this.height + 2) - 1));
+            } else if (roll < 15) {
+                ops.add(new Op(CLEAR, 0, 0, 0));
+            } else if (roll < 18) {
+                ops.add(new Op(COMMIT, 0, 0, 0));
+            } else {
+                ops.add(new Op(UNDO, 0, 0, 0));
+            }
+        }
+        return ops;
+    }
+
+    /**
+     * Runs the sequence on a new Board and a new candidate. Returns null if
+     * they agreed all along, otherwise a description of the first
+     * difference.
+     */
+    public String check(List<Op> ops) {
+        Subject expected = of(new Board(this.width, this.height));
+        Subject actual = this.candidates.get();
+        boolean broken = false; // after a failed place(), until undo()
+
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            if (broken && op.kind != UNDO) {
+                continue;
+            }
+            this.operations++;
+
+            int a = apply(expected, op);
+            int b = apply(actual, op);
+            if (a != b) {
+                return "operation " + i + ", " + op + ": expected " + describe(op, a) + " but got " + describe(op, b);
+            }
+            if (op.kind == PLACE || op.kind == DROP) {
+                broken = a != EXCEPTION && (a & 0xff) > Board.PLACE_ROW_FILLED;
+            } else if (op.kind == UNDO) {
+                broken = false;
+            }
+
+            if (!broken) {
+                String difference = compare(expected, actual);
+                if (difference != null) {
+                    return "after operation " + i + ", " + op + ": " + difference;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final int EXCEPTION = -1;
+
+    /*
+     * Runs one operation and returns its outcome as an int: EXCEPTION, the
+     * PLACE_ code, the dropHeight() in the next byte up for drops, or the
+     * clearRows() count.
+     */
+    private static int apply(Subject subject, Op op) {
+        try {
+            Piece piece = ROTATIONS.get(op.piece);
+            switch (op.kind) {
+                case PLACE:
+                    return subject.place(piece, op.x, op.y);
+                case DROP:
+                    int y = subject.dropHeight(piece, op.x);
+                    return y << 8 | subject.place(piece, op.x, y);
+                case CLEAR:
+                    return subject.clearRows();
+                case COMMIT:
+                    subject.commit();
+                    return 0;
+                default:
+                    subject.undo();
+                    return 0;
+            }
+        } catch (RuntimeException e) {
+            return EXCEPTION;
+        }
+    }
+
+    private static String describe(Op op, int outcome) {
+        if (outcome == EXCEPTION) {
+            return "an exception";
+        }
+        switch (op.kind) {
+            case PLACE:
+                return "place " + outcome;
+            case DROP:
+                return "y " + (outcome >> 8) + ", place " + (outcome & 0xff);
+            case CLEAR:
+                return outcome + " cleared";
+            default:
+                return "no exception";
+        }
+    }
+
+    private String compare(Subject expected, Subject actual) {
+        if (expected.getMaxHeight() != actual.getMaxHeight()) {
+            return "max height " + expected.getMaxHeight() + " but got " + actual.getMaxHeight();
+        }
+        for (int y = 0; y < this.height; y++) {
+            if (expected.getRowBits(y) != actual.getRowBits(y)) {
+                return "row " + y + " " + Long.toBinaryString(expected.getRowBits(y))
+                        + " but got " + Long.toBinaryString(actual.getRowBits(y));
+            }
+            if (expected.getRowWidth(y) != actual.getRowWidth(y)) {
+                return "row width " + y + " " + expected.getRowWidth(y) + " but got " + actual.getRowWidth(y);
+            }
+        }
+        for (int x = 0; x < this.width; x++) {
+            if (expected.getColumnHeight(x) != actual.getColumnHeight(x)) {
+                return "column height " + x + " " + expected.getColumnHeight(x)
+                        + " but got " + actual.getColumnHeight(x);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shrinks a failing sequence: deletes chunks of operations, halving the
+     * chunk size down to single operations, as long as the sequence still
+     * fails. The result fails, and deleting any one operation from it makes
+     * it pass.
+     */
+    public List<Op> shrink(List<Op> ops) {
+        List<Op> current = new ArrayList<>(ops);
+        for (int chunk = Math.max(1, current.size() / 2); chunk >= 1; chunk /= 2) {
+            boolean progress = true;
+            while (progress) {
+                progress = false;
+                for (int start = 0; start < current.size(); ) {
+                    List<Op> candidate = new ArrayList<>(current.subList(0, start));
+                    candidate.addAll(current.subList(Math.min(current.size(), start + chunk), current.size()));
+                    if (check(candidate) != null) {
+                        current = candidate;
+                        progress = true;
+                    } else {
+                        start += chunk;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Wraps a Board.
+     */
+    public static Subject of(final Board board) {
+        return new Subject() {
+            public int place(Piece piece, int x, int y) {
+                return board.place(piece, x, y);
+            }
+
+            public int clearRows() {
+                return board.clearRows();
+            }
+
+            public void commit() {
+                board.commit();
+            }
+
+            public void undo() {
+                board.undo();
+            }
+
+            public int dropHeight(Piece piece, int x) {
+                return board.dropHeight(piece, x);
+            }
+
+            public long getRowBits(int y) {
+                return board.getRowBits(y);
+            }
+
+            public int getRowWidth(int y) {
+                return board.getRowWidth(y);
+            }
+
+            public int getColumnHeight(int x) {
+                return board.getColumnHeight(x);
+            }
+
+            public int getMaxHeight() {
+                return board.getMaxHeight();
+            }
+        };
+    }
+
+    /**
+     * Wraps an ArenaBoard.
+     */
+    public static Subject of(final ArenaBoard board) {
+        return new Subject() {
+            public int place(Piece piece, int x, int y) {
+                return board.place(piece, x, y);
+            }
+
+            public int clearRows() {
+                return board.clearRows();
+            }
+
+            public void commit() {
+                board.commit();
+            }
+
+            public void undo() {
+                board.undo();
+            }
+
+            public int dropHeight(Piece piece, int x) {
+                return board.dropHeight(piece, x);
+            }
+
+            public long getRowBits(int y) {
+                return board.getRowBits(y);
+            }
+
+            public int getRowWidth(int y) {
+                return board.getRowWidth(y);
+            }
+
+            public int getColumnHeight(int x) {
+                return board.getColumnHeight(x);
+            }
+
+            public int getMaxHeight() {
+                return board.getMaxHeight();
+            }
+        };
+    }
+
+    /**
+     * Wraps a Board whose commit/undo is done with push() and pop() instead:
+     * the first place() or clearRows() after a commit() pushes a level, and
+     * so does every place(); undo() pops back to the levels there were at
+     * the last commit().
+     */
+    public static Subject journaled(final Board board) {
+        return new Subject() {
+            private boolean committed = true;
+            private int committedLevels;
+
+            public int place(Piece piece, int x, int y) {
+                if (!this.committed) {
+                    throw new RuntimeException("Can only place object if the board has been commited");
+                }
+                this.committed = false;
+                board.push();
+                return board.place(piece, x, y);
+            }
+
+            public int clearRows() {
+                if (board.getLevels() == this.committedLevels) {
+                    board.push();
+                }
+                return board.clearRows();
+            }
+
+            public void commit() {
+                this.committed = true;
+                this.committedLevels = board.getLevels();
+            }
+
+            public void undo() {
+                while (board.getLevels() > this.committedLevels) {
+                    board.pop();
+                }
+                this.committed = true;
+            }
+
+            public int dropHeight(Piece piece, int x) {
+                return board.dropHeight(piece, x);
+            }
+
+            public long getRowBits(int y) {
+                return board.getRowBits(y);
+            }
+
+            public int getRowWidth(int y) {
+                return board.getRowWidth(y);
+            }
+
+            public int getColumnHeight(int x) {
+                return board.getColumnHeight(x);
+            }
+
+            public int getMaxHeight() {
+                return board.getMaxHeight();
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        final int operations = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        final long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+        final int width = JTetris.WIDTH;
+        final int height = JTetris.HEIGHT + JTetris.TOP_SPACE;
+        final int length = 200;
+
+        final BoardArena arena = new BoardArena(width, height, 1);
+        final int slot = arena.allocate();
+        run("arena", new BoardFuzzer(width, height, () -> {
+            ArenaBoard board = arena.get(slot);
+            board.copyFrom(new Board(width, height));
+            return of(board);
+        }), seed, operations / length, length);
+        run("journaled", new BoardFuzzer(width, height, () -> journaled(new Board(width, height))),
+                seed, operations / length, length);
+    }
+
+    private static void run(String name, BoardFuzzer fuzzer, long seed, int count, int length) {
+        long start = System.nanoTime();
+        List<Op> failure = fuzzer.fuzz(seed, count, length);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d operations in %.1f s%n", name, fuzzer.getOperations(), seconds);
+        if (failure != null) {
+            System.out.println("  " + fuzzer.check(failure));
+            for (Op op : failure) {
+                System.out.println("    " + op);
+            }
+        }
+    }
+}
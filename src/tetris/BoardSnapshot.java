@@ -0,0 +1,88 @@
+// BoardSnapshot.java
+
+package tetris;
+
+/**
+ * An immutable copy of a Board at one moment, made by Board.publish(). It
+ * has the read methods of Board, and since it never changes, any thread
+ * can read it without locking while the board goes on being played --
+ * Board.getSnapshot() hands out the latest one through a volatile field.
+ * <p>
+ * The grid is kept as bit rows, (width + 63) / 64 longs per row, so a
+ * snapshot of a standard board is one small long array plus the widths and
+ * heights, whatever the board's own representation.
+ */
+public final class BoardSnapshot {
+
+    private final int width;
+    private final int height;
+    private final long version;
+    private final int words; // longs per row
+    private final long[] bits;
+    private final int[] widths;
+    private final int[] heights;
+    private final int maxHeight;
+
+    BoardSnapshot(Board board, long version) {
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.version = version;
+        this.words = (this.width + 63) / 64;
+        this.bits = new long[this.words * this.height];
+        if (board.isPacked()) {
+            System.arraycopy(board.rows, 0, this.bits, 0, this.height);
+        } else {
+            for (int x = 0; x < this.width; x++) {
+                boolean[] column = board.grid[x];
+                for (int y = 0; y < this.height; y++) {
+                    if (column[y]) {
+                        this.bits[y * this.words + (x >> 6)] |= 1L << x;
+                    }
+                }
+            }
+        }
+        this.widths = board.widths.clone();
+        this.heights = board.heights.clone();
+        this.maxHeight = board.getMaxHeight();
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns the number of this snapshot among those published by its
+     * board, counting from 1; later snapshots have larger versions.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    public int getMaxHeight() {
+        return this.maxHeight;
+    }
+
+    public int getColumnHeight(int x) {
+        return this.heights[x];
+    }
+
+    public int getRowWidth(int y) {
+        return this.widths[y];
+    }
+
+    public boolean getGrid(int x, int y) {
+        return (this.bits[y * this.words + (x >> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Returns row y packed as in Board.getRowBits(). Only valid for
+     * snapshots of packed boards.
+     */
+    public long getRowBits(int y) {
+        return this.bits[y * this.words];
+    }
+}
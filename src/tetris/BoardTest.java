@@ -4,6 +4,7 @@ import org.junit.Test;
 import tetris.*;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -303,4 +304,153 @@ public class BoardTest {
         ;
 
     }
+
+    @Test
+    public void testPushPop() {
+        Board b = new Board(4, 6);
+        Piece square = new Piece(Piece.SQUARE_STR);
+
+        b.push();
+        b.place(square, 0, 0);
+        b.clearRows();
+        b.push();
+        assertEquals(Board.PLACE_ROW_FILLED, b.place(square, 2, 0));
+        assertEquals(2, b.clearRows());
+        assertEquals(0, b.getMaxHeight());
+        assertEquals(2, b.getLevels());
+
+        b.pop();
+        assertEquals(2, b.getMaxHeight());
+        assertEquals(2, b.getRowWidth(0));
+        b.pop();
+        assertEquals(0, b.getLevels());
+        assertEquals(0, b.getMaxHeight());
+        assertEquals(0, b.getRowWidth(0));
+    }
+
+    @Test
+    public void testPushPopRandom() {
+        // a random depth first search, checking every pop() against a copy
+        // taken at the matching push()
+        Random random = new Random(1);
+        Piece[] pieces = Piece.getPieces();
+        Board b = new Board(6, 12);
+
+        for (int i = 0; i < 200; i++) {
+            Board[] saved = new Board[6];
+            int depth = 0;
+            for (int step = 0; step < 40; step++) {
+                if (depth == saved.length || (depth > 0 && random.nextInt(3) == 0)) {
+                    b.pop();
+                    depth--;
+                    assertSameBoard(saved[depth], b);
+                } else {
+                    saved[depth++] = new Board(b);
+                    b.push();
+                    Piece piece = pieces[random.nextInt(pieces.length)];
+                    int x = random.nextInt(b.getWidth());
+                    int y = random.nextInt(b.getHeight());
+                    if (x + piece.getWidth() <= b.getWidth() && random.nextBoolean()) {
+                        y = b.dropHeight(piece, x);
+                    }
+                    // out of bounds and bad placements have to be popped too
+                    if (b.place(piece, x, y) <= Board.PLACE_ROW_FILLED) {
+                        b.clearRows();
+                    }
+                }
+            }
+            while (depth > 0) {
+                b.pop();
+                depth--;
+                assertSameBoard(saved[depth], b);
+            }
+        }
+    }
+
+    private static void assertSameBoard(Board expected, Board b) {
+        assertArrayEquals(expected.grid, b.grid);
+        assertTrue(Arrays.equals(expected.heights, b.heights));
+        assertTrue(Arrays.equals(expected.widths, b.widths));
+        assertEquals(expected.getMaxHeight(), b.getMaxHeight());
+    }
+
+    @Test
+    public void testSnapshot() {
+        Board b = new Board(6, 6);
+        assertNull(b.getSnapshot());
+        b.place(new Piece(Piece.PYRAMID_STR), 0, 0);
+        BoardSnapshot first = b.publish();
+        assertTrue(first == b.getSnapshot());
+
+        b.undo();
+        b.place(new Piece(Piece.STICK_STR), 5, 0);
+        b.commit();
+        BoardSnapshot second = b.publish();
+        assertTrue(second.getVersion() > first.getVersion());
+
+        // the first snapshot still shows the pyramid
+        assertEquals(2, first.getMaxHeight());
+        assertEquals(3, first.getRowWidth(0));
+        assertTrue(first.getGrid(1, 1));
+        assertFalse(first.getGrid(5, 0));
+        assertEquals(0x7L, first.getRowBits(0));
+
+        for (int y = 0; y < 6; y++) {
+            assertEquals(b.getRowWidth(y), second.getRowWidth(y));
+            assertEquals(b.getRowBits(y), second.getRowBits(y));
+            for (int x = 0; x < 6; x++) {
+                assertEquals(b.getGrid(x, y), second.getGrid(x, y));
+            }
+        }
+        assertEquals(4, second.getColumnHeight(5));
+    }
+
+    @Test
+    public void testSnapshotWide() {
+        Board b = new Board(70, 4);
+        b.place(new Piece(Piece.STICK_STR), 68, 0);
+        BoardSnapshot snapshot = b.publish();
+        assertTrue(snapshot.getGrid(68, 3));
+        assertFalse(snapshot.getGrid(67, 0));
+        assertEquals(4, snapshot.getColumnHeight(68));
+    }
+
+    @Test
+    public void testSnapshotReader() throws Exception {
+        final Board b = new Board(10, 24);
+        final Piece[] pieces = Piece.getPieces();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(3);
+            for (int i = 0; i < 20000; i++) {
+                Piece piece = pieces[random.nextInt(pieces.length)];
+                int x = random.nextInt(10 - piece.getWidth() + 1);
+                if (b.place(piece, x, b.dropHeight(piece, x)) > Board.PLACE_ROW_FILLED) {
+                    b.undo();
+                }
+                b.clearRows();
+                b.commit();
+                if (b.getMaxHeight() > 18) {
+                    b.copyFrom(new Board(10, 24));
+                }
+                b.publish();
+            }
+        });
+        writer.start();
+
+        // every snapshot seen is consistent in itself
+        long last = 0;
+        while (writer.isAlive()) {
+            BoardSnapshot snapshot = b.getSnapshot();
+            if (snapshot == null) {
+                continue;
+            }
+            assertTrue(snapshot.getVersion() >= last);
+            last = snapshot.getVersion();
+            for (int y = 0; y < 24; y++) {
+                assertEquals(Long.bitCount(snapshot.getRowBits(y)), snapshot.getRowWidth(y));
+            }
+        }
+        writer.join();
+        assertEquals(20000, b.getSnapshot().getVersion());
+    }
 }
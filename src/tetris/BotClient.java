@@ -0,0 +1,143 @@
+// BotClient.java
+
+package tetris;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A stand-in for an external bot: connects to a BotServer and plays its
+ * games with a local Brain, over a plain blocking channel. Used by the tests
+ * and, through main(), to put many connections on a running server.
+ */
+public class BotClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final Brain brain;
+    private final ByteBuffer in;
+    private final ByteBuffer out;
+
+    private int gamesFinished;
+    private int lastScore;
+
+    public BotClient(SocketAddress address, Brain brain) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            this.channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.channel = SocketChannel.open();
+        }
+        this.channel.connect(address);
+        this.brain = brain;
+        this.in = ByteBuffer.allocate(BotProtocol.stateSize(255));
+        this.out = ByteBuffer.allocate(BotProtocol.MOVE_SIZE);
+    }
+
+    public int getGamesFinished() {
+        return this.gamesFinished;
+    }
+
+    /**
+     * Returns the final score of the last finished game.
+     */
+    public int getLastScore() {
+        return this.lastScore;
+    }
+
+    /**
+     * Plays the given number of moves, across as many games as it takes.
+     */
+    public void play(int maxMoves) throws IOException {
+        int played = 0;
+        while (played < maxMoves) {
+            readFully(1);
+            byte type = this.in.get(0);
+
+            if (type == BotProtocol.GAME_OVER) {
+                readFully(BotProtocol.GAME_OVER_SIZE);
+                this.gamesFinished++;
+                this.lastScore = this.in.getInt(5);
+                continue;
+            }
+            if (type != BotProtocol.STATE) {
+                throw new IOException("bad message from server");
+            }
+
+            readFully(BotProtocol.STATE_HEADER);
+            int width = this.in.get(1);
+            int height = this.in.get(2) & 0xff;
+            int pieceIndex = this.in.get(3);
+            readFully(BotProtocol.stateSize(height));
+            this.in.position(BotProtocol.STATE_HEADER);
+            Board board = BotProtocol.getBoard(this.in, width, height);
+
+            Piece root = Piece.getPieces()[pieceIndex];
+            Brain.Move move = this.brain.bestMove(board, root, height - JTetris.TOP_SPACE);
+            int rotation = 0;
+            int x = 0;
+            if (move != null) {
+                rotation = HeadlessGame.rotationIndex(root, move.piece);
+                x = move.x;
+            }
+
+            this.out.clear();
+            BotProtocol.putMove(this.out, rotation, x);
+            this.out.flip();
+            while (this.out.hasRemaining()) {
+                this.channel.write(this.out);
+            }
+            played++;
+        }
+    }
+
+    // reads until the first n bytes of the message are in the buffer
+    private void readFully(int n) throws IOException {
+        if (n == 1) {
+            this.in.clear();
+        }
+        this.in.limit(n);
+        while (this.in.hasRemaining()) {
+            if (this.channel.read(this.in) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Connects the given number of DefaultBrain clients (default 100) to a
+     * server on localhost:port (default 7777) and plays until killed.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7777;
+        int clients = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        final SocketAddress address = new InetSocketAddress("localhost", port);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try (BotClient client = new BotClient(address, new DefaultBrain())) {
+                    client.play(Integer.MAX_VALUE);
+                } catch (IOException e) {
+                    System.err.println(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
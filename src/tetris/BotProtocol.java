@@ -0,0 +1,98 @@
+// BotProtocol.java
+
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol spoken between BotServer and external bots. All
+ * numbers are big-endian. The server speaks first:
+ * <pre>
+ * STATE     (server to bot)  u8 STATE, u8 width, u8 height, u8 pieceIndex,
+ *                            i32 count, i32 score, height x i32 row bits
+ * GAME_OVER (server to bot)  u8 GAME_OVER, i32 count, i32 score
+ * MOVE      (bot to server)  u8 MOVE, u8 rotation, i8 x
+ * </pre>
+ * Row bits have bit x set when block (x, y) is filled, rows go from y = 0
+ * (the bottom) up. pieceIndex indexes Piece.getPieces(), and a MOVE's
+ * rotation counts computeNextRotation() steps from that first rotation.
+ * <p>
+ * After a GAME_OVER the server immediately starts a new game on the same
+ * connection and sends its first STATE.
+ */
+public final class BotProtocol {
+
+    public static final byte STATE = 1;
+    public static final byte GAME_OVER = 2;
+    public static final byte MOVE = 3;
+
+    public static final int STATE_HEADER = 12;
+    public static final int GAME_OVER_SIZE = 9;
+    public static final int MOVE_SIZE = 3;
+
+    // boards are sent as one int per row
+    public static final int MAX_WIDTH = 32;
+
+    private BotProtocol() {
+    }
+
+    public static int stateSize(int height) {
+        return STATE_HEADER + 4 * height;
+    }
+
+    /**
+     * Appends a STATE frame for the given game to the buffer.
+     */
+    public static void putState(ByteBuffer buffer, HeadlessGame game) {
+        Board board = game.getBoard();
+        buffer.put(STATE);
+        buffer.put((byte) board.getWidth());
+        buffer.put((byte) board.getHeight());
+        buffer.put((byte) game.getPieceIndex());
+        buffer.putInt(game.getCount());
+        buffer.putInt(game.getScore());
+        for (int y = 0; y < board.getHeight(); y++) {
+            buffer.putInt(rowBits(board, y));
+        }
+    }
+
+    public static void putGameOver(ByteBuffer buffer, HeadlessGame game) {
+        buffer.put(GAME_OVER);
+        buffer.putInt(game.getCount());
+        buffer.putInt(game.getScore());
+    }
+
+    public static void putMove(ByteBuffer buffer, int rotation, int x) {
+        buffer.put(MOVE);
+        buffer.put((byte) rotation);
+        buffer.put((byte) x);
+    }
+
+    /**
+     * Reads the board rows of a STATE frame into a new board. The buffer
+     * should be positioned just after the header.
+     */
+    public static Board getBoard(ByteBuffer buffer, int width, int height) {
+        Board board = new Board(width, height);
+        for (int y = 0; y < height; y++) {
+            int bits = buffer.getInt();
+            while (bits != 0) {
+                board.grid[Integer.numberOfTrailingZeros(bits)][y] = true;
+                bits &= bits - 1;
+            }
+        }
+        board.updateWidthsHeights();
+        board.commit();
+        return board;
+    }
+
+    static int rowBits(Board board, int y) {
+        int bits = 0;
+        for (int x = 0; x < board.getWidth(); x++) {
+            if (board.getGrid(x, y)) {
+                bits |= 1 << x;
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,399 @@
+// BotServer.java
+
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hosts many headless games at once. External bots connect over TCP or a
+ * Unix domain socket and each connection gets its own HeadlessGame, played
+ * with the BotProtocol messages; all connections are served by a single
+ * non-blocking selector thread, so thousands of them cost only their
+ * buffers. Games can also be played server-side by any Brain, on a small
+ * pool of worker threads (see startBrainGames()).
+ * <p>
+ * getConnectionCount() and getMoveCount() report the load; main() prints
+ * them every few seconds.
+ */
+public class BotServer implements Runnable, Closeable {
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong seeds;
+    private final int width;
+    private final int height;
+
+    private Thread thread;
+    private ExecutorService brainPool;
+    private volatile boolean running;
+
+    /**
+     * Opens a server on the given address -- an InetSocketAddress or a
+     * UnixDomainSocketAddress -- with standard sized boards. The piece
+     * sequences of successive games are seeded from seed, seed + 1, ...
+     */
+    public BotServer(SocketAddress address, long seed) throws IOException {
+        this(address, seed, JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE);
+    }
+
+    public BotServer(SocketAddress address, long seed, int width, int height) throws IOException {
+        if (width > BotProtocol.MAX_WIDTH || height > 255) {
+            throw new IllegalArgumentException("Board too big for the bot protocol");
+        }
+        this.width = width;
+        this.height = height;
+        this.seeds = new AtomicLong(seed);
+
+        this.selector = Selector.open();
+        if (address instanceof UnixDomainSocketAddress) {
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        this.server.bind(address, 1024);
+        this.server.configureBlocking(false);
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the address actually bound -- useful after binding port 0.
+     */
+    public SocketAddress getAddress() throws IOException {
+        return this.server.getLocalAddress();
+    }
+
+    public int getConnectionCount() {
+        return this.connections.get();
+    }
+
+    /**
+     * Returns the number of moves played so far, by bots and server-side
+     * brains together.
+     */
+    public long getMoveCount() {
+        return this.moves.get();
+    }
+
+    private HeadlessGame newGame() {
+        return new HeadlessGame(this.width, this.height, this.seeds.getAndIncrement());
+    }
+
+    /**
+     * Starts serving connections on a new daemon thread.
+     */
+    public synchronized void start() {
+        if (this.thread == null) {
+            this.running = true;
+            this.thread = new Thread(this, "tetris-bot-server");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Plays the given number of games server-side, forever, on a pool of
+     * threads. Each thread gets its own brain from the supplier and plays its
+     * share of the games round-robin; finished games are replaced by new
+     * ones.
+     */
+    public synchronized void startBrainGames(final Supplier<? extends Brain> brains, int games, int threads) {
+        if (this.brainPool == null) {
+            this.brainPool = Executors.newFixedThreadPool(threads, r -> {
+                Thread worker = new Thread(r, "tetris-brain-games");
+                worker.setDaemon(true);
+                return worker;
+            });
+        }
+        this.running = true;
+
+        for (int t = 0; t < threads; t++) {
+            final int share = games / threads + ((t < games % threads) ? 1 : 0);
+            this.brainPool.execute(() -> {
+                Brain brain = brains.get();
+                List<HeadlessGame> mine = new ArrayList<>();
+                for (int i = 0; i < share; i++) {
+                    mine.add(newGame());
+                }
+                while (running && !Thread.currentThread().isInterrupted()) {
+                    for (int i = 0; i < mine.size(); i++) {
+                        HeadlessGame game = mine.get(i);
+                        game.playWith(brain);
+                        moves.incrementAndGet();
+                        if (!game.isGameOn()) {
+                            mine.set(i, newGame());
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    public void run() {
+        try {
+            while (this.running) {
+                this.selector.select(100);
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    try {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException e) {
+                        // a broken connection only ends its own game
+                        drop(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            dropAll();
+        }
+    }
+
+    /*
+     * Accepts the pending connections. Failing to accept one (e.g. out of
+     * file descriptors) or to set it up only loses that client; the server
+     * keeps listening.
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = this.server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+
+            SelectionKey key = null;
+            try {
+                channel.configureBlocking(false);
+                if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                key = channel.register(this.selector, SelectionKey.OP_READ);
+                Connection connection = new Connection(key, newGame());
+                key.attach(connection);
+                this.connections.incrementAndGet();
+                connection.sendState();
+                connection.flush();
+            } catch (IOException e) {
+                if (key != null && key.attachment() != null) {
+                    drop(key);
+                } else {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Closes a connection. Its key is detached so that a connection dropped
+     * twice is only counted once.
+     */
+    private void drop(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+        if (key.attach(null) != null) {
+            this.connections.decrementAndGet();
+        }
+    }
+
+    // closes every connection still open; only called by the thread that
+    // owns the selector, or once it has stopped
+    private void dropAll() {
+        for (SelectionKey key : this.selector.keys()) {
+            if (key.isValid() && key.attachment() != null) {
+                drop(key);
+            }
+        }
+    }
+
+    /**
+     * Stops the selector and the server-side games and closes every
+     * connection. The connections are closed by the selector thread as it
+     * stops, which this waits for; they are only closed here if it was
+     * never started.
+     */
+    public void close() throws IOException {
+        this.running = false;
+        if (this.brainPool != null) {
+            this.brainPool.shutdownNow();
+        }
+        Thread selectorThread;
+        synchronized (this) {
+            selectorThread = this.thread;
+        }
+        if (selectorThread != null) {
+            this.selector.wakeup();
+            boolean interrupted = false;
+            while (selectorThread.isAlive()) {
+                try {
+                    selectorThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            dropAll();
+        }
+        this.server.close();
+        this.selector.close();
+    }
+
+    /*
+     * One bot connection and its game. Moves are applied as soon as they are
+     * read and there is room for their replies; if the bot sends moves faster
+     * than it reads states, the moves wait in the input buffer and reading
+     * stops until the output buffer has drained enough to answer them.
+     */
+    private class Connection {
+        private final SelectionKey key;
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+        private HeadlessGame game;
+
+        Connection(SelectionKey key, HeadlessGame game) {
+            this.key = key;
+            this.channel = (SocketChannel) key.channel();
+            this.game = game;
+            this.in = ByteBuffer.allocate(BotProtocol.MOVE_SIZE * 32);
+            this.out = ByteBuffer.allocate(4 * (BotProtocol.GAME_OVER_SIZE + BotProtocol.stateSize(height)));
+        }
+
+        void sendState() {
+            BotProtocol.putState(this.out, this.game);
+        }
+
+        void read() throws IOException {
+            if (this.channel.read(this.in) < 0) {
+                throw new IOException("closed by bot");
+            }
+            flush();
+        }
+
+        /*
+         * Writes what it can of the replies, answering the buffered moves as
+         * room frees up, and only reads again once every whole move read so
+         * far has been answered.
+         */
+        void flush() throws IOException {
+            final int reply = BotProtocol.GAME_OVER_SIZE + BotProtocol.stateSize(height);
+            boolean waiting;
+            boolean pending;
+            do {
+                waiting = answer(reply);
+                this.out.flip();
+                this.channel.write(this.out);
+                pending = this.out.hasRemaining();
+                this.out.compact();
+            } while (waiting && this.out.remaining() >= reply);
+
+            int ops = waiting ? 0 : SelectionKey.OP_READ;
+            this.key.interestOps(pending ? ops | SelectionKey.OP_WRITE : ops);
+        }
+
+        // plays the buffered moves there is room to reply to, and returns
+        // whether whole moves are left
+        private boolean answer(int reply) throws IOException {
+            this.in.flip();
+            while (this.in.remaining() >= BotProtocol.MOVE_SIZE && this.out.remaining() >= reply) {
+                if (this.in.get() != BotProtocol.MOVE) {
+                    throw new IOException("bad message from bot");
+                }
+                int rotation = this.in.get() & 3;
+                int x = this.in.get();
+
+                Piece piece = HeadlessGame.rotation(this.game.getCurrentPiece(), rotation);
+                this.game.play(piece, x);
+                moves.incrementAndGet();
+
+                if (!this.game.isGameOn()) {
+                    BotProtocol.putGameOver(this.out, this.game);
+                    this.game = newGame();
+                }
+                sendState();
+            }
+            boolean waiting = this.in.remaining() >= BotProtocol.MOVE_SIZE;
+            this.in.compact();
+            return waiting;
+        }
+    }
+
+    /**
+     * Runs a server on the given TCP port (default 7777), optionally playing
+     * some games server-side with DefaultBrain, and prints the connection
+     * count and moves per second every 5 seconds.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7777;
+        int brainGames = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+
+        BotServer server = new BotServer(new InetSocketAddress("localhost", port), System.nanoTime());
+        server.start();
+        if (brainGames > 0) {
+            server.startBrainGames(DefaultBrain::new, brainGames, Runtime.getRuntime().availableProcessors());
+        }
+        System.out.println("Serving on " + server.getAddress());
+
+        long lastMoves = 0;
+        long lastTime = System.nanoTime();
+        while (true) {
+            TimeUnit.SECONDS.sleep(5);
+            long now = System.nanoTime();
+            long total = server.getMoveCount();
+            System.out.printf("connections=%d moves/s=%.0f%n", server.getConnectionCount(),
+                    (total - lastMoves) / ((now - lastTime) / 1e9));
+            lastMoves = total;
+            lastTime = now;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BotServerTest {
+
+    @Test
+    public void testHeadlessGame() {
+        HeadlessGame game = new HeadlessGame(42);
+        Brain brain = new DefaultBrain();
+        for (int i = 0; i < 50 && game.isGameOn(); i++) {
+            game.playWith(brain);
+        }
+        assertTrue(game.isGameOn());
+        assertEquals(51, game.getCount());
+        assertTrue(game.getScore() >= 51);
+    }
+
+    @Test
+    public void testIllegalMoveEndsGame() {
+        HeadlessGame game = new HeadlessGame(1);
+        assertEquals(-1, game.play(game.getCurrentPiece(), -1));
+        assertFalse(game.isGameOn());
+    }
+
+    @Test
+    public void testRotationIndex() {
+        Piece l = new Piece(Piece.L1_STR);
+        for (int n = 0; n < 4; n++) {
+            assertEquals(n, HeadlessGame.rotationIndex(l, HeadlessGame.rotation(l, n)));
+        }
+        assertEquals(-1, HeadlessGame.rotationIndex(l, new Piece(Piece.SQUARE_STR)));
+    }
+
+    @Test
+    public void testClientsPlayOverTcp() throws Exception {
+        try (BotServer server = new BotServer(new InetSocketAddress("localhost", 0), 7)) {
+            server.start();
+
+            final List<BotClient> clients = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                clients.add(new BotClient(server.getAddress(), new DefaultBrain()));
+            }
+
+            List<Thread> threads = new ArrayList<>();
+            final List<Throwable> errors = new ArrayList<>();
+            for (final BotClient client : clients) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        client.play(200);
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertTrue(errors.toString(), errors.isEmpty());
+            assertEquals(4, server.getConnectionCount());
+
+            // the last move of each client may still be in flight
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getMoveCount() < 800 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(800, server.getMoveCount());
+
+            for (BotClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testServerSideBrains() throws Exception {
+        try (BotServer server = new BotServer(new InetSocketAddress("localhost", 0), 7)) {
+            server.startBrainGames(DefaultBrain::new, 10, 2);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getMoveCount() < 100 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(server.getMoveCount() >= 100);
+        }
+    }
+
+    @Test
+    public void testPipelinedMoves() throws Exception {
+        try (BotServer server = new BotServer(new InetSocketAddress("localhost", 0), 7);
+             SocketChannel bot = SocketChannel.open(server.getAddress())) {
+            server.start();
+
+            // more moves at once than the server has room to answer in one go
+            ByteBuffer moves = ByteBuffer.allocate(32 * BotProtocol.MOVE_SIZE);
+            for (int i = 0; i < 32; i++) {
+                BotProtocol.putMove(moves, 0, 0);
+            }
+            moves.flip();
+            while (moves.hasRemaining()) {
+                bot.write(moves);
+            }
+
+            // then reads the replies as they come, so they can all be sent
+            final ByteBuffer replies = ByteBuffer.allocate(1 << 16);
+            Thread reader = new Thread(() -> {
+                try {
+                    while (bot.read(replies) >= 0) {
+                        replies.clear();
+                    }
+                } catch (Exception ignored) {
+                }
+            });
+            reader.setDaemon(true);
+            reader.start();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getMoveCount() < 32 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(32, server.getMoveCount());
+        }
+    }
+
+    @Test
+    public void testCloseDropsEachConnectionOnce() throws Exception {
+        BotServer server = new BotServer(new InetSocketAddress("localhost", 0), 7);
+        server.start();
+        List<SocketChannel> bots = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            bots.add(SocketChannel.open(server.getAddress()));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getConnectionCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, server.getConnectionCount());
+
+        // one bot leaves first, so its key is already cancelled at close
+        bots.get(0).close();
+        deadline = System.currentTimeMillis() + 5000;
+        while (server.getConnectionCount() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        server.close();
+        assertEquals(0, server.getConnectionCount());
+
+        for (SocketChannel bot : bots) {
+            bot.close();
+        }
+    }
+}
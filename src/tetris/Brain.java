@@ -23,4 +23,41 @@ public interface Brain {
      * -- typically 20 (i.e. board.getHeight() - 4)
      */
     public Brain.Move bestMove(Board board, Piece piece, int limitHeight);
+
+    /**
+     * Batch version of bestMove(): computes the best move for each of the
+     * first count (boards[i], pieces[i]) pairs into results[i]. Entries of
+     * results are reused when non-null and allocated otherwise; when no play
+     * is possible for a pair, results[i].piece is set to null. The boards
+     * are not modified.
+     * <p>
+     * This default just calls bestMove() for each pair, see bestMovesEach().
+     * Implementations can override it to share setup across the batch,
+     * reuse scratch boards and spread the work over several threads.
+     */
+    public default void bestMoves(Board[] boards, Piece[] pieces, int count, int limitHeight, Brain.Move[] results) {
+        bestMovesEach(this, boards, pieces, count, limitHeight, results);
+    }
+
+    /**
+     * bestMoves() done by calling the brain's bestMove() for each pair in
+     * turn, for brains whose batch search doesn't apply.
+     */
+    public static void bestMovesEach(Brain brain, Board[] boards, Piece[] pieces, int count, int limitHeight,
+                                     Brain.Move[] results) {
+        for (int i = 0; i < count; i++) {
+            Brain.Move move = brain.bestMove(boards[i], pieces[i], limitHeight);
+            if (results[i] == null) {
+                results[i] = new Brain.Move();
+            }
+            if (move == null) {
+                results[i].piece = null;
+            } else {
+                results[i].x = move.x;
+                results[i].y = move.y;
+                results[i].piece = move.piece;
+                results[i].score = move.score;
+            }
+        }
+    }
 }
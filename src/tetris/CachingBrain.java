@@ -0,0 +1,251 @@
+// CachingBrain.java
+
+package tetris;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * A Brain that remembers the moves of the brain it wraps. On a board with
+ * no holes, the board is entirely given by its column heights, so the best
+ * move only depends on them, the piece and limitHeight -- and the same
+ * question comes back often: JBrainTetris.pickWorstPiece() asks about the
+ * board for all seven pieces, and the next tick asks again for the one it
+ * picked; flat, low stacks also repeat all game long.
+ * <p>
+ * Moves are kept in a LinkedHashMap in access order, which drops the least
+ * recently used one beyond the capacity. The key is the skyline -- the
+ * column heights -- with the piece (root and rotation), limitHeight and the
+ * board width, packed a byte each in longs. Boards with holes go straight
+ * to the wrapped brain, and so do boards with full rows at the bottom
+ * (which games clear anyway): clearing them changes the ratings of the
+ * moves that fill a row, so the same surface higher up is a different
+ * question. Pieces that are not rotations of Piece.getPieces() are not
+ * cached either.
+ * <p>
+ * Lookups are synchronized, searches are not, so the brain can be shared.
+ * Hits, misses and an estimate of the memory used are reported by the
+ * getters, also over JMX once register() is called.
+ */
+public class CachingBrain implements AnytimeBrain, CachingBrainMBean {
+
+    // estimated bytes per entry besides the key's longs: the key and its
+    // array headers, the move, the map entry and its table slot
+    private static final int ENTRY_OVERHEAD = 24 + 16 + 40 + 48 + 8;
+
+    private static final class Key {
+        private final long[] words;
+        private final int hash;
+
+        Key(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Key) && Arrays.equals(this.words, ((Key) obj).words);
+        }
+    }
+
+    private final Brain brain;
+    private final int capacity;
+    private final Map<Key, Brain.Move> moves;
+
+    private long hits;
+    private long misses;
+    private long bypassed;
+    private int keyWords;
+
+    /**
+     * Wraps the brain with a cache of at most capacity moves.
+     */
+    public CachingBrain(Brain brain, final int capacity) {
+        this.brain = brain;
+        this.capacity = capacity;
+        this.moves = new LinkedHashMap<Key, Brain.Move>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Brain.Move> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public Brain getBrain() {
+        return this.brain;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight) {
+        return bestMove(board, piece, limitHeight, Long.MAX_VALUE);
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, long deadline) {
+        final Key key = key(board, piece, limitHeight);
+        if (key == null) {
+            synchronized (this) {
+                this.bypassed++;
+            }
+            return search(board, piece, limitHeight, deadline);
+        }
+
+        Brain.Move cached;
+        synchronized (this) {
+            cached = this.moves.get(key);
+            if (cached != null) {
+                this.hits++;
+            } else {
+                this.misses++;
+            }
+        }
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        Brain.Move move = search(board, piece, limitHeight, deadline);
+        if (move != null) {
+            Brain.Move entry = copy(move);
+            synchronized (this) {
+                this.moves.put(key, entry);
+                this.keyWords = key.words.length;
+            }
+        }
+        return move;
+    }
+
+    private Brain.Move search(Board board, Piece piece, int limitHeight, long deadline) {
+        if (deadline != Long.MAX_VALUE && this.brain instanceof AnytimeBrain) {
+            return ((AnytimeBrain) this.brain).bestMove(board, piece, limitHeight, deadline);
+        }
+        return this.brain.bestMove(board, piece, limitHeight);
+    }
+
+    private static Brain.Move copy(Brain.Move move) {
+        Brain.Move copy = new Brain.Move();
+        copy.x = move.x;
+        copy.y = move.y;
+        copy.piece = move.piece;
+        copy.score = move.score;
+        return copy;
+    }
+
+    private static int lowestColumn(Board board) {
+        int lowest = board.getColumnHeight(0);
+        for (int x = 1; x < board.getWidth(); x++) {
+            lowest = Math.min(lowest, board.getColumnHeight(x));
+        }
+        return lowest;
+    }
+
+    /*
+     * Returns the key of the question, or null if it can't be cached: a
+     * byte per column height, then the piece -- root index times 4 plus
+     * rotation -- the limit and the width.
+     */
+    private static Key key(Board board, Piece piece, int limit) {
+        final int width = board.getWidth();
+        if (width > 0xff || limit < 0 || limit > 0xff || lowestColumn(board) != 0
+                || BoardAnalysis.countHoles(board) != 0) {
+            return null;
+        }
+        final int id = pieceId(piece);
+        if (id < 0) {
+            return null;
+        }
+
+        long[] words = new long[(width + 3 + 7) / 8];
+        for (int x = 0; x < width; x++) {
+            int height = board.getColumnHeight(x);
+            if (height > 0xff) {
+                return null;
+            }
+            words[x >> 3] |= (long) height << ((x & 7) * 8);
+        }
+        words[width >> 3] |= (long) id << ((width & 7) * 8);
+        words[(width + 1) >> 3] |= (long) limit << (((width + 1) & 7) * 8);
+        words[(width + 2) >> 3] |= (long) width << (((width + 2) & 7) * 8);
+        return new Key(words);
+    }
+
+    // root index * 4 + rotation, or -1 for a piece not in getPieces()
+    private static int pieceId(Piece piece) {
+        Piece[] roots = Piece.getPieces();
+        for (int i = 0; i < roots.length; i++) {
+            int rotation = HeadlessGame.rotationIndex(roots[i], piece);
+            if (rotation >= 0) {
+                return 4 * i + rotation;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized int getSize() {
+        return this.moves.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getBypassed() {
+        return this.bypassed;
+    }
+
+    /**
+     * Returns the fraction of the cacheable questions that were answered
+     * from the cache.
+     */
+    public synchronized double getHitRate() {
+        long lookups = this.hits + this.misses;
+        return (lookups == 0) ? 0 : (double) this.hits / lookups;
+    }
+
+    /**
+     * Returns an estimate of the heap used by the cached moves, in bytes.
+     */
+    public synchronized long getMemoryBytes() {
+        return (long) this.moves.size() * (ENTRY_OVERHEAD + 8 * this.keyWords);
+    }
+
+    public synchronized void clear() {
+        this.moves.clear();
+        this.hits = 0;
+        this.misses = 0;
+        this.bypassed = 0;
+    }
+
+    /**
+     * Registers the cache with the platform MBean server, as
+     * tetris:type=MoveCache. Failing to do so only costs the JMX view.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("tetris:type=MoveCache"));
+        } catch (Exception ignored) {
+        }
+    }
+
+    public String toString() {
+        return String.format("move cache: %d/%d moves, hit rate %.1f%% (%d hits, %d misses, %d bypassed), ~%d KB",
+                getSize(), this.capacity, 100 * getHitRate(), getHits(), getMisses(), getBypassed(),
+                getMemoryBytes() / 1024);
+    }
+}
@@ -0,0 +1,27 @@
+// CachingBrainMBean.java
+
+package tetris;
+
+/**
+ * JMX view of a CachingBrain's move cache.
+ */
+public interface CachingBrainMBean {
+    public int getSize();
+
+    public int getCapacity();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public long getBypassed();
+
+    public double getHitRate();
+
+    /**
+     * Returns an estimate of the heap used by the cached moves, in bytes.
+     */
+    public long getMemoryBytes();
+
+    public void clear();
+}
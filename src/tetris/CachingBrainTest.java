@@ -0,0 +1,94 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CachingBrainTest {
+
+    private static void assertSameMove(Brain.Move expected, Brain.Move actual) {
+        assertEquals(expected.x, actual.x);
+        assertEquals(expected.y, actual.y);
+        assertEquals(expected.piece, actual.piece);
+    }
+
+    @Test
+    public void testSameGame() {
+        Brain plain = new DefaultBrain();
+        CachingBrain cached = new CachingBrain(new DefaultBrain(), 1000);
+        HeadlessGame a = new HeadlessGame(6);
+        HeadlessGame b = new HeadlessGame(6);
+        for (int i = 0; i < 300 && a.isGameOn(); i++) {
+            // ask about every piece first, as pickWorstPiece() does
+            for (Piece piece : Piece.getPieces()) {
+                assertSameMove(plain.bestMove(a.getBoard(), piece, a.getLimitHeight()),
+                        cached.bestMove(b.getBoard(), piece, b.getLimitHeight()));
+            }
+            assertEquals(a.playWith(plain), b.playWith(cached));
+        }
+        assertEquals(a.getScore(), b.getScore());
+        assertTrue(cached.getHits() > 0);
+        assertTrue(cached.getHitRate() > 0.1);
+        assertTrue(cached.getMemoryBytes() > 0);
+    }
+
+    @Test
+    public void testHitAndEviction() {
+        CachingBrain brain = new CachingBrain(new DefaultBrain(), 2);
+        Board board = new Board(10, 24);
+        Piece[] pieces = Piece.getPieces();
+
+        brain.bestMove(board, pieces[0], 20);
+        brain.bestMove(board, pieces[0], 20);
+        assertEquals(1, brain.getHits());
+        assertEquals(1, brain.getMisses());
+        assertEquals(0.5, brain.getHitRate(), 1e-9);
+
+        brain.bestMove(board, pieces[1], 20);
+        brain.bestMove(board, pieces[2], 20); // evicts pieces[0]
+        assertEquals(2, brain.getSize());
+        brain.bestMove(board, pieces[0], 20);
+        assertEquals(1, brain.getHits());
+
+        // a different limit is a different question
+        brain.bestMove(board, pieces[0], 10);
+        assertEquals(1, brain.getHits());
+    }
+
+    @Test
+    public void testHolesBypass() {
+        CachingBrain brain = new CachingBrain(new DefaultBrain(), 10);
+        Board board = new Board(10, 24);
+        board.place(new Piece(Piece.S1_STR), 0, 0); // leaves a hole under it
+        board.commit();
+        assertTrue(BoardAnalysis.countHoles(board) > 0);
+
+        brain.bestMove(board, Piece.getPieces()[0], 20);
+        brain.bestMove(board, Piece.getPieces()[0], 20);
+        assertEquals(0, brain.getHits());
+        assertEquals(2, brain.getBypassed());
+        assertEquals(0, brain.getSize());
+    }
+
+    @Test
+    public void testFullRowsBypass() {
+        CachingBrain brain = new CachingBrain(new DefaultBrain(), 10);
+        Piece square = new Piece(Piece.SQUARE_STR);
+
+        // two full rows that were not cleared: filling a row now clears them
+        // too, so the moves of the same surface lower down don't hold
+        Board high = new Board(10, 24);
+        for (int x = 0; x < 10; x += 2) {
+            high.place(square, x, 0);
+            high.commit();
+        }
+        high.place(square, 0, 2);
+        high.commit();
+
+        Brain.Move move = brain.bestMove(high, Piece.getPieces()[0], 22);
+        brain.bestMove(high, Piece.getPieces()[0], 22);
+        assertEquals(2, brain.getBypassed());
+        assertEquals(0, brain.getSize());
+        assertEquals(high.dropHeight(move.piece, move.x), move.y);
+    }
+}
@@ -0,0 +1,179 @@
+// Checkpoint.java
+
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of saved HeadlessGames, to stop long runs and resume them exactly.
+ * The file has a fixed number of slots of HeadlessGame.stateSize() bytes
+ * (plus a byte saying whether the slot is used) and is memory-mapped, so
+ * saving a game is a few dozen stores into the mapping, and has() and
+ * hash() read a slot where it lies, without copying or decoding it.
+ * <p>
+ * All values are little-endian. The file starts with a HEADER_SIZE byte
+ * header:
+ * <pre>
+ * int   MAGIC
+ * short VERSION
+ * byte  board width
+ * byte  board height
+ * int   number of slots
+ * int   slot size
+ * </pre>
+ * Opening an existing file checks that it has the expected board size and
+ * number of slots. save() forces the slot to the disk, so a crash leaves
+ * either the old game, the new one, or an empty slot, never a mix; other
+ * writes reach the disk when the system writes the mapping back, or at
+ * force(). Not thread safe.
+ */
+public class Checkpoint implements Closeable {
+
+    public static final int MAGIC = 0x4b505454; // "TTPK" in little-endian
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int slots;
+    private final int slotSize;
+
+    /**
+     * Opens the file, creating it with all slots empty if it does not exist,
+     * for the given number of games on boards of the given size.
+     */
+    public Checkpoint(Path file, int width, int height, int slots) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.slots = slots;
+        this.slotSize = 1 + HeadlessGame.stateSize(width, height);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        boolean fresh = this.channel.size() == 0;
+        long size = HEADER_SIZE + (long) slots * this.slotSize;
+        if (!fresh && this.channel.size() != size) {
+            this.channel.close();
+            throw new IOException("Checkpoint file has the wrong size: " + file);
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (fresh) {
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putShort(4, VERSION);
+            this.buffer.put(6, (byte) width);
+            this.buffer.put(7, (byte) height);
+            this.buffer.putInt(8, slots);
+            this.buffer.putInt(12, this.slotSize);
+        } else if (this.buffer.getInt(0) != MAGIC || this.buffer.getShort(4) != VERSION
+                || (this.buffer.get(6) & 0xff) != width || (this.buffer.get(7) & 0xff) != height
+                || this.buffer.getInt(8) != slots || this.buffer.getInt(12) != this.slotSize) {
+            this.channel.close();
+            throw new IOException("Not a matching checkpoint file: " + file);
+        }
+    }
+
+    public int getSlots() {
+        return this.slots;
+    }
+
+    private int offset(int slot) {
+        if (slot < 0 || slot >= this.slots) {
+            throw new IndexOutOfBoundsException("No slot " + slot);
+        }
+        return HEADER_SIZE + slot * this.slotSize;
+    }
+
+    /**
+     * Saves the game in the given slot, replacing what was there. The slot
+     * is marked empty on disk while it is being written, and used again
+     * once the new state is on disk.
+     */
+    public void save(int slot, HeadlessGame game) {
+        Board board = game.getBoard();
+        if (board.getWidth() != this.width || board.getHeight() != this.height) {
+            throw new IllegalArgumentException("Board size does not match the checkpoint file");
+        }
+        int offset = offset(slot);
+        this.buffer.put(offset, (byte) 0);
+        this.buffer.force(offset, 1);
+
+        ByteBuffer out = this.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        out.position(offset + 1);
+        game.writeState(out);
+        this.buffer.force(offset + 1, this.slotSize - 1);
+
+        this.buffer.put(offset, (byte) 1);
+        this.buffer.force(offset, 1);
+    }
+
+    public boolean has(int slot) {
+        return this.buffer.get(offset(slot)) != 0;
+    }
+
+    /**
+     * Reads the game in the given slot back into the given game, which then
+     * goes on as the saved one would have. Throws if the slot is empty.
+     */
+    public void load(int slot, HeadlessGame game) {
+        if (!has(slot)) {
+            throw new IllegalStateException("Slot " + slot + " is empty");
+        }
+        ByteBuffer in = this.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.position(offset(slot) + 1);
+        game.readState(in);
+    }
+
+    /**
+     * Returns a new game restored from the given slot.
+     */
+    public HeadlessGame load(int slot) {
+        HeadlessGame game = new HeadlessGame(this.width, this.height, 0);
+        load(slot, game);
+        return game;
+    }
+
+    /**
+     * Returns BoardCodec.hash() of the board saved in the given slot, read
+     * in place.
+     */
+    public long hash(int slot) {
+        if (!has(slot)) {
+            throw new IllegalStateException("Slot " + slot + " is empty");
+        }
+        return BoardCodec.hash(this.buffer, offset(slot) + 1);
+    }
+
+    /**
+     * Marks the given slot empty.
+     */
+    public void clear(int slot) {
+        this.buffer.put(offset(slot), (byte) 0);
+    }
+
+    /**
+     * Writes the mapping to the disk.
+     */
+    public void force() {
+        this.buffer.force();
+    }
+
+    /**
+     * Forces the mapping and closes the file. The mapping itself goes away
+     * when it is garbage collected.
+     */
+    public void close() throws IOException {
+        force();
+        this.channel.close();
+    }
+}
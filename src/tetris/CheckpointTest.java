@@ -0,0 +1,129 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+
+    private static void assertSameGrid(Board expected, Board actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            assertEquals(expected.getRowBits(y), actual.getRowBits(y));
+        }
+        for (int x = 0; x < expected.getWidth(); x++) {
+            assertEquals(expected.getColumnHeight(x), actual.getColumnHeight(x));
+        }
+        assertEquals(expected.getMaxHeight(), actual.getMaxHeight());
+    }
+
+    @Test
+    public void testCodec() {
+        // odd widths put rows across byte and word boundaries
+        int[][] sizes = {{10, 24}, {7, 13}, {3, 5}, {63, 4}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            ByteBuffer buffer = ByteBuffer.allocate(BoardCodec.size(width, height) + 3);
+            for (Board board : Benchmark.sampleBoards(50, width, height, width)) {
+                buffer.clear();
+                buffer.put((byte) 0x5a); // not at the start of the buffer
+                BoardCodec.encode(board, buffer);
+                assertEquals(1 + BoardCodec.size(width, height), buffer.position());
+                assertEquals(BoardCodec.hash(board), BoardCodec.hash(buffer, 1));
+
+                Board decoded = new Board(width, height);
+                buffer.flip();
+                buffer.get();
+                BoardCodec.decode(buffer, decoded);
+                assertFalse(buffer.hasRemaining());
+                assertSameGrid(board, decoded);
+                assertEquals(BoardCodec.hash(board), BoardCodec.hash(decoded));
+            }
+        }
+        assertEquals(32, BoardCodec.size(10, 24));
+    }
+
+    @Test
+    public void testHashDiffers() {
+        Board board = new Board(10, 24);
+        long empty = BoardCodec.hash(board);
+        board.place(new Piece(Piece.SQUARE_STR), 0, 0);
+        board.commit();
+        assertTrue(BoardCodec.hash(board) != empty);
+    }
+
+    @Test
+    public void testGameRandom() {
+        Random random = new Random(42);
+        GameRandom game = new GameRandom(42);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(random.nextDouble(), game.nextDouble(), 0);
+            assertEquals(random.nextInt(7), game.nextInt(7));
+        }
+
+        GameRandom copy = new GameRandom(0);
+        copy.setState(game.getState());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(game.nextLong(), copy.nextLong());
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        Path file = Files.createTempFile("tetris", ".checkpoint");
+        Files.delete(file); // the checkpoint creates it
+        Brain brain = new DefaultBrain();
+        HeadlessGame game = new HeadlessGame(17);
+        int width = game.getBoard().getWidth();
+        int height = game.getBoard().getHeight();
+
+        try {
+            try (Checkpoint checkpoint = new Checkpoint(file, width, height, 4)) {
+                assertFalse(checkpoint.has(2));
+                for (int i = 0; i < 60 && game.isGameOn(); i++) {
+                    game.playWith(brain);
+                }
+                checkpoint.save(2, game);
+                assertEquals(BoardCodec.hash(game.getBoard()), checkpoint.hash(2));
+            }
+
+            HeadlessGame resumed;
+            try (Checkpoint checkpoint = new Checkpoint(file, width, height, 4)) {
+                assertTrue(checkpoint.has(2));
+                assertFalse(checkpoint.has(0));
+                resumed = checkpoint.load(2);
+            }
+            assertEquals(game.getCount(), resumed.getCount());
+            assertEquals(game.getScore(), resumed.getScore());
+            assertEquals(game.getPieceIndex(), resumed.getPieceIndex());
+            assertSameGrid(game.getBoard(), resumed.getBoard());
+
+            for (int i = 0; i < 200 && game.isGameOn(); i++) {
+                assertEquals(game.playWith(brain), resumed.playWith(brain));
+                assertEquals(game.getPieceIndex(), resumed.getPieceIndex());
+            }
+            assertEquals(game.isGameOn(), resumed.isGameOn());
+            assertEquals(game.getScore(), resumed.getScore());
+            assertSameGrid(game.getBoard(), resumed.getBoard());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testWrongSize() throws Exception {
+        Path file = Files.createTempFile("tetris", ".checkpoint");
+        Files.delete(file);
+        try {
+            new Checkpoint(file, 10, 24, 2).close();
+            new Checkpoint(file, 10, 24, 3);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -2,6 +2,11 @@
 
 package tetris;
 
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
 /**
  * Provided code. A simple Brain implementation. bestMove() iterates through all
  * the possible x values and rotations to play a particular piece (there are
@@ -14,32 +19,138 @@ package tetris;
  */
 
 public class DefaultBrain implements Brain {
+    private static final GameMetrics METRICS = GameMetrics.get();
+
+    // bestMoves() hands out the batch to threads in chunks of this many pairs
+    private static final int BATCH_CHUNK = 32;
+
+    // whether a subclass has its own bestMove(), which bestMoves() must not skip
+    private static final ClassValue<Boolean> OWN_BEST_MOVE = new ClassValue<Boolean>() {
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("bestMove", Board.class, Piece.class, int.class)
+                        .getDeclaringClass() != DefaultBrain.class;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    // bestMove()'s scratch board, one per thread since a brain may be shared
+    private final ThreadLocal<Board> scratch = new ThreadLocal<>();
+
     /**
      * Given a piece and a board, returns a move object that represents the best
      * play for that piece, or returns null if no play is possible. See the
      * Brain interface for details.
      */
     public Brain.Move bestMove(Board board, Piece piece, int limitHeight) {
+        Board work = this.scratch.get();
+        if (work == null || work.getWidth() != board.getWidth() || work.getHeight() != board.getHeight()) {
+            work = new Board(board.getWidth(), board.getHeight());
+            this.scratch.set(work);
+        }
+        work.copyFrom(board);
+
         Brain.Move move = new Brain.Move();
-        board = new Board(board);
+        if (search(work, rotations(piece), limitHeight, move)) {
+            return move;
+        } else {
+            return null; // could not find a play at all!
+        }
+    }
+
+    /**
+     * Batch version of bestMove(), see the Brain interface. The rotations of
+     * each distinct piece are computed once for the whole batch, each thread
+     * reuses a single scratch board for all its pairs, and the batch is
+     * spread over the common fork/join pool. Subclasses with their own
+     * bestMove() (e.g. LookaheadBrain) get it called for each pair instead,
+     * so batch answers are always those of bestMove().
+     */
+    public void bestMoves(final Board[] boards, final Piece[] pieces, int count, final int limitHeight,
+                          final Brain.Move[] results) {
+        if (OWN_BEST_MOVE.get(getClass())) {
+            Brain.bestMovesEach(this, boards, pieces, count, limitHeight, results);
+            return;
+        }
+        final Map<Piece, Piece[]> rotations = new IdentityHashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (!rotations.containsKey(pieces[i])) {
+                rotations.put(pieces[i], rotations(pieces[i]));
+            }
+            if (results[i] == null) {
+                results[i] = new Brain.Move();
+            }
+        }
+
+        final int total = count;
+        IntStream.range(0, (count + BATCH_CHUNK - 1) / BATCH_CHUNK).parallel().forEach(chunk -> {
+            Board work = null;
+            final int end = Math.min(total, (chunk + 1) * BATCH_CHUNK);
+            for (int i = chunk * BATCH_CHUNK; i < end; i++) {
+                Board board = boards[i];
+                if (work == null || work.getWidth() != board.getWidth() || work.getHeight() != board.getHeight()) {
+                    work = new Board(board.getWidth(), board.getHeight());
+                }
+                work.copyFrom(board);
+
+                if (!search(work, rotations.get(pieces[i]), limitHeight, results[i])) {
+                    results[i].piece = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns whether a piece dropped to height y is low enough to be
+     * considered by the search. It may reach one row above limitHeight,
+     * which the game survives when that row fills and is cleared; every
+     * search over placements uses this same rule.
+     */
+    protected static boolean fits(Piece piece, int y, int limitHeight) {
+        return y + piece.getHeight() <= limitHeight + 1;
+    }
+
+    /**
+     * Returns all the distinct rotations of the piece, starting with the
+     * piece itself.
+     */
+    protected static Piece[] rotations(Piece piece) {
+        Piece[] rotations = new Piece[4];
+        int n = 0;
+        Piece current = piece;
+        do {
+            rotations[n++] = current;
+            current = current.fastRotation();
+        } while (n < rotations.length && !current.equals(piece));
+
+        return (n == rotations.length) ? rotations : Arrays.copyOf(rotations, n);
+    }
+
+    /*
+     * The search itself: tries every rotation at every column on the given
+     * committed board, which is left as it was found. Fills in move and
+     * returns true if any play was possible.
+     */
+    private boolean search(Board board, Piece[] rotations, int limitHeight, Brain.Move move) {
+        TetrisEvents.BrainDecision event = new TetrisEvents.BrainDecision();
+        event.begin();
+        int candidates = 0;
 
         double bestScore = 1e20;
         int bestX = 0;
         int bestY = 0;
         Piece bestPiece = null;
-        Piece current = new Piece(piece);
-
-        board.commit();
 
         // loop through all the rotations
-        while (true) {
-            final int yBound = limitHeight - current.getHeight() + 1;
+        for (Piece current : rotations) {
             final int xBound = board.getWidth() - current.getWidth() + 1;
 
             // For current rotation, try all the possible columns
             for (int x = 0; x < xBound; x++) {
                 int y = board.dropHeight(current, x);
-                if (y > yBound) { // piece does stick up too far
+                if (!fits(current, y, limitHeight)) { // piece does stick up too far
                     continue;
                 }
                 int result = board.place(current, x, y);
@@ -49,6 +160,7 @@ public class DefaultBrain implements Brain {
                     }
 
                     double score = rateBoard(board);
+                    candidates++;
                     if (score < bestScore) {
                         bestScore = score;
                         bestX = x;
@@ -59,22 +171,26 @@ public class DefaultBrain implements Brain {
 
                 board.undo();
             }
+        }
 
-            current = current.computeNextRotation();
-            if (current.equals(piece)) {
-                break; // break if back to original rotation
-            }
+        METRICS.addCandidates(candidates);
+        if (event.shouldCommit()) {
+            event.brain = getClass().getSimpleName();
+            event.candidates = candidates;
+            event.bestX = bestX;
+            event.bestY = bestY;
+            event.bestScore = bestScore;
+            event.commit();
         }
 
         if (bestPiece == null) {
-            return null; // could not find a play at all!
-        } else {
-            move.x = bestX;
-            move.y = bestY;
-            move.piece = bestPiece;
-            move.score = bestScore;
-            return move;
+            return false;
         }
+        move.x = bestX;
+        move.y = bestY;
+        move.piece = bestPiece;
+        move.score = bestScore;
+        return true;
     }
 
     /*
@@ -87,23 +203,15 @@ public class DefaultBrain implements Brain {
         final int maxHeight = board.getMaxHeight();
 
         int sumHeight = 0;
-        int holes = 0;
 
-        // Count the holes, and sum up the heights
+        // Sum up the heights
         for (int x = 0; x < width; x++) {
-            final int colHeight = board.getColumnHeight(x);
-            sumHeight += colHeight;
-
-            int y = colHeight - 2; // addr of first possible hole
-
-            while (y >= 0) {
-                if (!board.getGrid(x, y)) {
-                    holes++;
-                }
-                y--;
-            }
+            sumHeight += board.getColumnHeight(x);
         }
 
+        // Count the holes, a whole row at a time on packed boards
+        final int holes = BoardAnalysis.countHoles(board);
+
         double avgHeight = ((double) sumHeight) / width;
 
         // Add up the counts to make an overall score
@@ -0,0 +1,12 @@
+// Evaluator.java
+
+package tetris;
+
+/**
+ * Rates a board like DefaultBrain.rateBoard(): larger numbers for worse
+ * boards. See EvaluatorConfig and EvaluatorCompiler.
+ */
+public interface Evaluator {
+
+    public double rate(Board board);
+}
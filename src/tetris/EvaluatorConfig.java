@@ -0,0 +1,163 @@
+// EvaluatorConfig.java
+
+package tetris;
+
+/**
+ * The weights of a linear board evaluator: the score of a board is the sum
+ * of each enabled feature (see BoardFeatures) times its weight. A config
+ * can be written as a string of name=weight pairs, e.g.
+ * <pre>
+ * maxHeight=8 sumHeight=4 holes=1.25
+ * </pre>
+ * which are DefaultBrain's weights on a 10 wide board; features not listed
+ * are disabled.
+ * <p>
+ * interpret() gives an evaluator that reads the config on every call;
+ * EvaluatorCompiler.compile() gives one specialized to the config as it is
+ * at that point.
+ */
+public class EvaluatorConfig {
+
+    public enum Feature {
+        MAX_HEIGHT("maxHeight"),
+        SUM_HEIGHT("sumHeight"),
+        HOLES("holes"),
+        ROW_TRANSITIONS("rowTransitions"),
+        COLUMN_TRANSITIONS("columnTransitions"),
+        BUMPINESS("bumpiness");
+
+        private final String configName;
+
+        Feature(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return this.configName;
+        }
+
+        /**
+         * Returns this feature's value among the given features.
+         */
+        public int valueIn(BoardFeatures features) {
+            switch (this) {
+                case MAX_HEIGHT:
+                    return features.maxHeight;
+                case SUM_HEIGHT:
+                    return features.sumHeight;
+                case HOLES:
+                    return features.holes;
+                case ROW_TRANSITIONS:
+                    return features.rowTransitions;
+                case COLUMN_TRANSITIONS:
+                    return features.columnTransitions;
+                default:
+                    return features.bumpiness;
+            }
+        }
+    }
+
+    private static final Feature[] FEATURES = Feature.values();
+
+    private final double[] weights = new double[FEATURES.length];
+    private final boolean[] enabled = new boolean[FEATURES.length];
+
+    /**
+     * Creates a config with every feature disabled.
+     */
+    public EvaluatorConfig() {
+    }
+
+    /**
+     * Returns DefaultBrain's weights for a 10 wide board.
+     */
+    public static EvaluatorConfig standard() {
+        return parse("maxHeight=8 sumHeight=4 holes=1.25");
+    }
+
+    /**
+     * Parses name=weight pairs separated by spaces or commas. Throws an
+     * IllegalArgumentException for unknown names or bad numbers.
+     */
+    public static EvaluatorConfig parse(String text) {
+        EvaluatorConfig config = new EvaluatorConfig();
+        for (String pair : text.trim().split("[\\s,]+")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected name=weight: " + pair);
+            }
+            String name = pair.substring(0, equals);
+            Feature feature = null;
+            for (Feature f : FEATURES) {
+                if (f.getConfigName().equals(name)) {
+                    feature = f;
+                }
+            }
+            if (feature == null) {
+                throw new IllegalArgumentException("Unknown feature: " + name);
+            }
+            config.set(feature, Double.parseDouble(pair.substring(equals + 1)));
+        }
+        return config;
+    }
+
+    /**
+     * Enables the feature with the given weight. Returns this config.
+     */
+    public EvaluatorConfig set(Feature feature, double weight) {
+        this.weights[feature.ordinal()] = weight;
+        this.enabled[feature.ordinal()] = true;
+        return this;
+    }
+
+    /**
+     * Disables the feature, keeping its weight. Returns this config.
+     */
+    public EvaluatorConfig disable(Feature feature) {
+        this.enabled[feature.ordinal()] = false;
+        return this;
+    }
+
+    public boolean isEnabled(Feature feature) {
+        return this.enabled[feature.ordinal()];
+    }
+
+    public double getWeight(Feature feature) {
+        return this.weights[feature.ordinal()];
+    }
+
+    /**
+     * Returns an evaluator that goes through this config on every call:
+     * all the features are computed, then each one is checked and weighed.
+     * Later changes to the config show up in its results.
+     */
+    public Evaluator interpret() {
+        return board -> {
+            BoardFeatures features = new BoardFeatures();
+            BoardAnalysis.analyze(board, features);
+            double score = 0;
+            for (int i = 0; i < FEATURES.length; i++) {
+                if (this.enabled[i]) {
+                    score += this.weights[i] * FEATURES[i].valueIn(features);
+                }
+            }
+            return score;
+        };
+    }
+
+    public String toString() {
+        StringBuilder buff = new StringBuilder();
+        for (Feature feature : FEATURES) {
+            if (isEnabled(feature)) {
+                if (buff.length() > 0) {
+                    buff.append(' ');
+                }
+                buff.append(feature.getConfigName()).append('=').append(getWeight(feature));
+            }
+        }
+        return buff.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EvaluatorTest {
+
+    @Test
+    public void testParse() {
+        EvaluatorConfig config = EvaluatorConfig.parse("holes=2, bumpiness=0.5");
+        assertTrue(config.isEnabled(EvaluatorConfig.Feature.HOLES));
+        assertFalse(config.isEnabled(EvaluatorConfig.Feature.MAX_HEIGHT));
+        assertEquals(0.5, config.getWeight(EvaluatorConfig.Feature.BUMPINESS), 0);
+        assertEquals("holes=2.0 bumpiness=0.5", config.toString());
+
+        try {
+            EvaluatorConfig.parse("height=3");
+            fail("unknown feature");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testStandardIsDefaultBrain() {
+        Evaluator compiled = EvaluatorCompiler.compile(EvaluatorConfig.standard());
+        DefaultBrain brain = new DefaultBrain();
+        for (Board board : Benchmark.sampleBoards(100, JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE, 2)) {
+            assertEquals(brain.rateBoard(board), compiled.rate(board), 1e-9);
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() {
+        Random random = new Random(4);
+        List<Board> boards = Benchmark.sampleBoards(50, 8, 16, 3);
+        EvaluatorConfig.Feature[] features = EvaluatorConfig.Feature.values();
+
+        for (int i = 0; i < 40; i++) {
+            EvaluatorConfig config = new EvaluatorConfig();
+            for (EvaluatorConfig.Feature feature : features) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        break;
+                    case 1:
+                        config.set(feature, 1);
+                        break;
+                    case 2:
+                        config.set(feature, random.nextDouble() * 10).disable(feature);
+                        break;
+                    default:
+                        config.set(feature, random.nextDouble() * 10);
+                }
+            }
+
+            Evaluator interpreted = config.interpret();
+            Evaluator compiled = EvaluatorCompiler.compile(config);
+            for (Board board : boards) {
+                assertEquals(interpreted.rate(board), compiled.rate(board), 1e-9);
+            }
+        }
+    }
+}
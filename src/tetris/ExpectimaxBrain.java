@@ -0,0 +1,168 @@
+// ExpectimaxBrain.java
+
+package tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * An expectimax brain: the same search as LookaheadBrain -- the average
+ * over the seven possible next pieces at chance nodes, the best placement
+ * at decision nodes -- made fast enough for depth 3 at interactive speed.
+ * <p>
+ * The seven branches of the upper chance nodes are searched in parallel as
+ * fork/join tasks on a work-stealing pool, each on its own copy of the
+ * board. Brains with the same number of threads share one pool, so they
+ * need no closing. Chance node values are cached for the duration of a
+ * move, keyed by the board contents, remaining depth and limit, since
+ * different placement orders often lead to the same stack: such shared
+ * subtrees are then only searched once. Each bestMove() call has a cache of
+ * its own, so one brain can be used by several threads.
+ */
+public class ExpectimaxBrain extends LookaheadBrain {
+
+    // chance nodes with fewer pieces left than this are not worth splitting
+    private static final int PARALLEL_DEPTH = 2;
+
+    // the cache stops growing past this many positions
+    private static final int MAX_CACHED = 1 << 20;
+
+    // the pools, by number of threads, see the class comment
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+
+    // a search and its chance node values
+    private static class CachedSearch extends Search {
+        final ConcurrentHashMap<Position, Double> cache = new ConcurrentHashMap<>();
+
+        CachedSearch(int limitHeight, long deadline) {
+            super(limitHeight, deadline);
+        }
+    }
+
+    /**
+     * Creates a depth 3 brain using every core, with 200ms per move when
+     * called without a deadline.
+     */
+    public ExpectimaxBrain() {
+        this(3, 200, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a brain searching up to maxDepth (2 or 3 are practical) on a
+     * pool of the given number of threads.
+     */
+    public ExpectimaxBrain(int maxDepth, long budgetMillis, int threads) {
+        super(maxDepth, budgetMillis);
+        this.pool = POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+
+    public Brain.Move bestMove(final Board board, final Piece piece, final int limitHeight, final long deadline) {
+        try {
+            // run the whole search inside the pool so the forks are stolen
+            return this.pool.submit(() -> ExpectimaxBrain.super.bestMove(board, piece, limitHeight, deadline)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return super.bestMove(board, piece, limitHeight, System.nanoTime());
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    protected Search newSearch(int limitHeight, long deadline) {
+        return new CachedSearch(limitHeight, deadline);
+    }
+
+    protected double chanceValue(Board board, final int depth, final Search search) {
+        final ConcurrentHashMap<Position, Double> cache = ((CachedSearch) search).cache;
+        Position position = board.isPacked() ? new Position(board, depth, search.limitHeight) : null;
+        if (position != null) {
+            Double cached = cache.get(position);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        double value;
+        if (depth < PARALLEL_DEPTH) {
+            value = super.chanceValue(board, depth, search);
+        } else {
+            List<RecursiveTask<Double>> branches = new ArrayList<>();
+            for (final Piece[] rotations : ROTATIONS) {
+                final Board copy = new Board(board.getWidth(), board.getHeight());
+                copy.copyFrom(board);
+                branches.add(new RecursiveTask<Double>() {
+                    private static final long serialVersionUID = 1L;
+
+                    protected Double compute() {
+                        return decisionValue(copy, rotations, depth, search);
+                    }
+                });
+            }
+
+            try {
+                ForkJoinTask.invokeAll(branches);
+            } catch (RuntimeException e) {
+                // the pool may hand back a copy of our TIMEOUT, or wrap it
+                if (e.getClass() == TIMEOUT.getClass() || e.getCause() == TIMEOUT) {
+                    throw TIMEOUT;
+                }
+                throw e;
+            }
+
+            double sum = 0;
+            for (RecursiveTask<Double> branch : branches) {
+                sum += branch.join();
+            }
+            value = sum / ROTATIONS.length;
+        }
+
+        if (position != null && cache.size() < MAX_CACHED) {
+            cache.put(position, value);
+        }
+        return value;
+    }
+
+    /*
+     * Cache key: the packed rows of a board, the number of pieces left to
+     * place from it and the limit they must stay under.
+     */
+    private static class Position {
+        private final long[] rows;
+        private final int depth;
+        private final int limitHeight;
+        private final int hash;
+
+        Position(Board board, int depth, int limitHeight) {
+            this.rows = new long[board.getMaxHeight()];
+            long h = depth * 31L + limitHeight;
+            for (int y = 0; y < this.rows.length; y++) {
+                this.rows[y] = board.getRowBits(y);
+                h = (h ^ this.rows[y]) * 0x9E3779B97F4A7C15L;
+            }
+            this.depth = depth;
+            this.limitHeight = limitHeight;
+            this.hash = (int) (h ^ (h >>> 32));
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Position)) {
+                return false;
+            }
+            Position other = (Position) obj;
+            return this.depth == other.depth && this.limitHeight == other.limitHeight
+                    && Arrays.equals(this.rows, other.rows);
+        }
+    }
+}
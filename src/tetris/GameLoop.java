@@ -0,0 +1,191 @@
+// GameLoop.java
+
+package tetris;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Toolkit;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a JTetris on a thread of its own instead of its Swing timer, when
+ * the tetris.fixedStep system property is set to true. The simulation
+ * advances in fixed steps -- one tick(DOWN) per step, the step being the
+ * delay the speed slider gives, down to MIN_STEP_NANOS -- and the board is
+ * drawn FPS times per second, whatever the step, so the game speed and the
+ * frame rate don't depend on each other.
+ * <p>
+ * Frames are rendered actively: the loop draws the board into a
+ * VolatileImage (redrawn if its contents are lost) and copies it to the
+ * screen itself, and JTetris drops the repaint requests it would otherwise
+ * send to the Swing thread while the loop runs. Keys queued in the
+ * JTetris' InputQueue are played by the loop as soon as it wakes up. All
+ * game changes happen while holding the JTetris monitor, which JTetris' own
+ * Swing-side code holds too; drawing takes no lock, as it only reads the
+ * snapshot the JTetris publishes after each move.
+ * <p>
+ * When steps take longer than their period (slow brains, top speed), the
+ * loop still stops stepping whenever a frame is due, and forgets the steps
+ * it is more than a frame behind on rather than trying to catch up with
+ * them later.
+ */
+public class GameLoop implements Runnable {
+
+    public static final int FPS = 60;
+    public static final long MIN_STEP_NANOS = 1000000L;
+
+    private static final long FRAME_NANOS = 1000000000L / FPS;
+
+    private final JTetris tetris;
+    private volatile long stepNanos = 400 * 1000000L;
+    private volatile Thread thread;
+
+    private VolatileImage image;
+
+    public GameLoop(JTetris tetris) {
+        this.tetris = tetris;
+    }
+
+    /**
+     * Sets the time between two tick(DOWN), in milliseconds.
+     */
+    public void setStepMillis(int millis) {
+        this.stepNanos = Math.max(MIN_STEP_NANOS, millis * 1000000L);
+    }
+
+    public boolean isRunning() {
+        return this.thread != null;
+    }
+
+    /**
+     * Starts a new loop thread. A loop already running is stopped first:
+     * it checks that it is still the current loop while holding the JTetris
+     * monitor before each change to the game, so once this returns to a
+     * caller holding the monitor (e.g. JTetris.startGame()), the old loop
+     * never touches the game again.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "tetris-game-loop");
+        thread.setDaemon(true);
+        Thread old = this.thread;
+        this.thread = thread;
+        if (old != null) {
+            LockSupport.unpark(old);
+        }
+        thread.start();
+    }
+
+    /**
+     * Stops the loop. It finishes the step or frame it is in, if any, and
+     * the thread ends; this does not wait for it, so the loop can stop
+     * itself.
+     */
+    public void stop() {
+        Thread thread = this.thread;
+        this.thread = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Wakes the loop up to play the keys just queued in the JTetris.
+     */
+    public void wake() {
+        Thread thread = this.thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public void run() {
+        final Thread self = Thread.currentThread();
+        long now = System.nanoTime();
+        long nextStep = now + this.stepNanos;
+        long nextFrame = now;
+
+        while (this.thread == self) {
+            synchronized (this.tetris) {
+                if (this.thread != self) {
+                    break;
+                }
+                this.tetris.playInput();
+            }
+
+            now = System.nanoTime();
+            while (now >= nextStep && this.thread == self) {
+                synchronized (this.tetris) {
+                    // start() may have replaced this loop while it waited
+                    if (this.thread != self) {
+                        break;
+                    }
+                    this.tetris.tick(JTetris.DOWN);
+                }
+                nextStep += this.stepNanos;
+                now = System.nanoTime();
+                if (now >= nextFrame) {
+                    break;
+                }
+            }
+            if (now - nextStep > FRAME_NANOS) {
+                nextStep = now + this.stepNanos; // too far behind
+            }
+
+            if (now >= nextFrame) {
+                render();
+                nextFrame += FRAME_NANOS;
+                if (nextFrame <= now) {
+                    nextFrame = now + FRAME_NANOS;
+                }
+            }
+
+            long wait = Math.min(nextStep, nextFrame) - System.nanoTime();
+            if (wait > 0 && this.tetris.inputQueue.isEmpty()) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    // draws the board into the volatile image and copies it to the screen
+    private void render() {
+        final int width = this.tetris.getWidth();
+        final int height = this.tetris.getHeight();
+        final GraphicsConfiguration gc = this.tetris.getGraphicsConfiguration();
+        if (width <= 0 || height <= 0 || gc == null || !this.tetris.isShowing()) {
+            return;
+        }
+
+        do {
+            if (this.image == null || this.image.getWidth() != width || this.image.getHeight() != height
+                    || this.image.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                this.image = gc.createCompatibleVolatileImage(width, height);
+            }
+
+            Graphics2D g = this.image.createGraphics();
+            try {
+                Color background = this.tetris.getBackground();
+                g.setColor(background == null ? Color.white : background);
+                g.fillRect(0, 0, width, height);
+                Color foreground = this.tetris.getForeground();
+                g.setColor(foreground == null ? Color.black : foreground);
+                this.tetris.paintBoard(g);
+            } finally {
+                g.dispose();
+            }
+
+            Graphics screen = this.tetris.getGraphics();
+            if (screen != null) {
+                try {
+                    screen.drawImage(this.image, 0, 0, null);
+                } finally {
+                    screen.dispose();
+                }
+            }
+        } while (this.image.contentsLost());
+
+        Toolkit.getDefaultToolkit().sync();
+    }
+}
@@ -0,0 +1,192 @@
+// GameMetrics.java
+
+package tetris;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide latency histograms, allocation meters and counters for the
+ * game loop. There is a single instance, reached through GameMetrics.get(),
+ * which registers itself (and one MBean per histogram) with the platform
+ * MBean server under the "tetris" domain the first time it is used, so the
+ * numbers can be watched live with jconsole or any other JMX client.
+ * <p>
+ * Setting the system property tetris.metrics.dump to a number of seconds
+ * also prints the whole table to stderr at that period.
+ */
+public class GameMetrics implements GameMetricsMBean {
+
+    public final LatencyHistogram tick = new LatencyHistogram("tick");
+    public final LatencyHistogram brainTick = new LatencyHistogram("brainTick");
+    public final LatencyHistogram bestMove = new LatencyHistogram("bestMove");
+    public final LatencyHistogram paint = new LatencyHistogram("paint");
+
+    // heap bytes allocated per operation, see AllocationMeter
+    public final AllocationMeter tickBytes = new AllocationMeter("tick");
+    public final AllocationMeter placementBytes = new AllocationMeter("placement");
+    public final AllocationMeter bestMoveBytes = new AllocationMeter("bestMove");
+
+    private final AtomicLong pieces = new AtomicLong();
+    private final AtomicLong rowsCleared = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+
+    private ScheduledExecutorService dumper;
+
+    private static GameMetrics instance;
+
+    private GameMetrics() {
+    }
+
+    /**
+     * Returns the shared instance, creating and registering it if needed.
+     */
+    public static synchronized GameMetrics get() {
+        if (instance == null) {
+            instance = new GameMetrics();
+            instance.register();
+
+            long period = Long.getLong("tetris.metrics.dump", 0);
+            if (period > 0) {
+                instance.startDump(period, System.err);
+            }
+        }
+        return instance;
+    }
+
+    private LatencyHistogram[] histograms() {
+        return new LatencyHistogram[]{tick, brainTick, bestMove, paint};
+    }
+
+    private AllocationMeter[] allocations() {
+        return new AllocationMeter[]{tickBytes, placementBytes, bestMoveBytes};
+    }
+
+    /*
+     * Registers with the platform MBean server. Failing to do so (e.g. a
+     * second class loader already registered the same names) only costs us
+     * the JMX view, so it is not an error.
+     */
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName("tetris:type=GameMetrics"));
+            for (LatencyHistogram histogram : histograms()) {
+                server.registerMBean(histogram,
+                        new ObjectName("tetris:type=Latency,name=" + histogram.getName()));
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * Starts printing dump() to the given stream every periodSeconds, on a
+     * daemon thread. Calling it again replaces the previous schedule.
+     */
+    public synchronized void startDump(long periodSeconds, final PrintStream out) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tetris-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> out.print(dump()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    public void addPiece() {
+        this.pieces.incrementAndGet();
+    }
+
+    public void addRowsCleared(int rows) {
+        this.rowsCleared.addAndGet(rows);
+    }
+
+    /**
+     * Counts placements rated by a brain while searching for a move.
+     */
+    public void addCandidates(int evaluated) {
+        this.candidates.addAndGet(evaluated);
+    }
+
+    public long getTicks() {
+        return this.tick.getCount();
+    }
+
+    public long getBrainTicks() {
+        return this.brainTick.getCount();
+    }
+
+    public long getBestMoves() {
+        return this.bestMove.getCount();
+    }
+
+    public long getPaints() {
+        return this.paint.getCount();
+    }
+
+    public long getPieces() {
+        return this.pieces.get();
+    }
+
+    public long getRowsCleared() {
+        return this.rowsCleared.get();
+    }
+
+    public long getCandidates() {
+        return this.candidates.get();
+    }
+
+    public double getTickBytes() {
+        return this.tickBytes.getBytesPerOperation();
+    }
+
+    public double getPlacementBytes() {
+        return this.placementBytes.getBytesPerOperation();
+    }
+
+    public double getBestMoveBytes() {
+        return this.bestMoveBytes.getBytesPerOperation();
+    }
+
+    public String dump() {
+        StringBuilder buff = new StringBuilder();
+        buff.append("-- tetris metrics: pieces=").append(getPieces())
+                .append(" rowsCleared=").append(getRowsCleared())
+                .append(" candidates=").append(getCandidates()).append('\n');
+        for (LatencyHistogram histogram : histograms()) {
+            buff.append(histogram).append('\n');
+        }
+        if (AllocationMeter.isSupported()) {
+            for (AllocationMeter allocation : allocations()) {
+                buff.append(allocation).append('\n');
+            }
+        }
+        return buff.toString();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms()) {
+            histogram.reset();
+        }
+        for (AllocationMeter allocation : allocations()) {
+            allocation.reset();
+        }
+        this.pieces.set(0);
+        this.rowsCleared.set(0);
+        this.candidates.set(0);
+    }
+}
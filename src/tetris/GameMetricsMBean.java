@@ -0,0 +1,38 @@
+// GameMetricsMBean.java
+
+package tetris;
+
+/**
+ * JMX view of the game-wide operation counters kept by GameMetrics.
+ */
+public interface GameMetricsMBean {
+    public long getTicks();
+
+    public long getBrainTicks();
+
+    public long getBestMoves();
+
+    public long getPaints();
+
+    public long getPieces();
+
+    public long getRowsCleared();
+
+    public long getCandidates();
+
+    /**
+     * Average heap bytes allocated per tick, placement and bestMove().
+     */
+    public double getTickBytes();
+
+    public double getPlacementBytes();
+
+    public double getBestMoveBytes();
+
+    /**
+     * Returns the same text as the periodic dump.
+     */
+    public String dump();
+
+    public void reset();
+}
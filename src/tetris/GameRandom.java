@@ -0,0 +1,52 @@
+// GameRandom.java
+
+package tetris;
+
+import java.util.Random;
+
+/**
+ * A java.util.Random whose state can be saved and restored, for games that
+ * are checkpointed (see Checkpoint). It is the same 48-bit generator, so a
+ * GameRandom gives exactly the numbers a Random with the same seed would,
+ * and the piece sequences of seeded games don't change.
+ * <p>
+ * Not thread safe, unlike Random; each game uses its own.
+ */
+public class GameRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // no initializer: Random's constructor sets it through setSeed()
+    private long state;
+
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (this.state >>> (48 - bits));
+    }
+
+    /**
+     * Returns the generator's current internal state, which setState()
+     * takes back. This is not a seed: setSeed(getState()) would not resume.
+     */
+    public long getState() {
+        return this.state;
+    }
+
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
@@ -0,0 +1,248 @@
+// HeadlessGame.java
+
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A game of tetris without any GUI or timer: a Board, the random piece
+ * sequence and the score, driven one whole placement at a time. Pieces are
+ * played the way a brain plays them -- pick a rotation and a column and drop
+ * it straight down -- so a game can be run as fast as the caller can decide.
+ * <p>
+ * Scoring, piece selection and the game-over rule are the same as in
+ * JTetris. Not thread safe; each game should be driven by one thread at a
+ * time.
+ * <p>
+ * The whole state of a game -- board, random generator, piece, count, score
+ * -- can be written to a buffer with writeState() and read back into a game
+ * of the same board size with readState(), which then goes on exactly as
+ * the saved game would have (see Checkpoint).
+ */
+public class HeadlessGame {
+
+    private static final GameMetrics METRICS = GameMetrics.get();
+
+    private final Board board;
+    private final GameRandom random;
+    private final Piece[] pieces;
+
+    private int pieceIndex; // index in Piece.getPieces() of the piece to play
+    private int count;
+    private int score;
+    private boolean gameOn;
+
+    /**
+     * Creates a game on a standard JTetris sized board, with the piece
+     * sequence given by the seed.
+     */
+    public HeadlessGame(long seed) {
+        this(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE, seed);
+    }
+
+    public HeadlessGame(int width, int height, long seed) {
+        this.board = new Board(width, height);
+        this.random = new GameRandom(seed);
+        this.pieces = Piece.getPieces();
+        this.gameOn = true;
+        nextPiece();
+    }
+
+    public Board getBoard() {
+        return this.board;
+    }
+
+    /**
+     * Returns the piece to be played next, in its first rotation.
+     */
+    public Piece getCurrentPiece() {
+        return this.pieces[this.pieceIndex];
+    }
+
+    public int getPieceIndex() {
+        return this.pieceIndex;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public int getScore() {
+        return this.score;
+    }
+
+    public boolean isGameOn() {
+        return this.gameOn;
+    }
+
+    /**
+     * Returns the current piece and the n - 1 pieces after it, as the game
+     * will deal them, without changing the game.
+     */
+    public Piece[] getUpcomingPieces(int n) {
+        Piece[] upcoming = new Piece[n];
+        GameRandom random = new GameRandom(0);
+        random.setState(this.random.getState());
+        for (int i = 0; i < n; i++) {
+            upcoming[i] = (i == 0) ? getCurrentPiece() : this.pieces[pickIndex(random)];
+        }
+        return upcoming;
+    }
+
+    /**
+     * Returns the height pieces must stay under, as passed to
+     * Brain.bestMove().
+     */
+    public int getLimitHeight() {
+        return this.board.getHeight() - JTetris.TOP_SPACE;
+    }
+
+    // same selection as JTetris.pickNextPiece()
+    private int pickIndex(GameRandom random) {
+        return (int) (this.pieces.length * random.nextDouble());
+    }
+
+    private void nextPiece() {
+        this.pieceIndex = pickIndex(this.random);
+        this.count++;
+        this.score++;
+    }
+
+    /**
+     * Drops the given rotation of the current piece straight down at column
+     * x, clears the filled rows and moves on to the next piece. Returns the
+     * number of rows cleared, or -1 if the move was illegal or made the stack
+     * too tall, in which case the game is over.
+     */
+    public int play(Piece rotated, int x) {
+        if (!this.gameOn) {
+            return -1;
+        }
+
+        if (x < 0 || x + rotated.getWidth() > this.board.getWidth()) {
+            this.gameOn = false;
+            return -1;
+        }
+
+        final long startBytes = AllocationMeter.threadAllocatedBytes();
+        int y = this.board.dropHeight(rotated, x);
+        int result = this.board.place(rotated, x, y);
+        if (result > Board.PLACE_ROW_FILLED) {
+            this.board.undo();
+            this.gameOn = false;
+            return -1;
+        }
+
+        int cleared = this.board.clearRows();
+        this.score += rowScore(cleared);
+        this.board.commit();
+        METRICS.placementBytes.recordSince(startBytes);
+
+        if (this.board.getMaxHeight() > getLimitHeight()) {
+            this.gameOn = false;
+            return -1;
+        }
+
+        nextPiece();
+        return cleared;
+    }
+
+    /**
+     * Plays the move the given brain picks for the current piece. Returns
+     * the same as play(), and ends the game if the brain finds no move.
+     */
+    public int playWith(Brain brain) {
+        Brain.Move move = brain.bestMove(this.board, getCurrentPiece(), getLimitHeight());
+        if (move == null) {
+            this.gameOn = false;
+            return -1;
+        }
+        return play(move.piece, move.x);
+    }
+
+    /**
+     * Returns the size in bytes of the state of a game on a board of the
+     * given size, as written by writeState().
+     */
+    public static int stateSize(int width, int height) {
+        return BoardCodec.size(width, height) + 8 + 4 + 4 + 1 + 1;
+    }
+
+    /**
+     * Writes the state of the game at the buffer's position, in the
+     * buffer's byte order, and moves the position past it.
+     */
+    public void writeState(ByteBuffer out) {
+        BoardCodec.encode(this.board, out);
+        out.putLong(this.random.getState());
+        out.putInt(this.count);
+        out.putInt(this.score);
+        out.put((byte) this.pieceIndex);
+        out.put((byte) (this.gameOn ? 1 : 0));
+    }
+
+    /**
+     * Replaces the state of this game with the one at the buffer's
+     * position, written by writeState() from a game of the same board size,
+     * and moves the position past it.
+     */
+    public void readState(ByteBuffer in) {
+        BoardCodec.decode(in, this.board);
+        this.random.setState(in.getLong());
+        this.count = in.getInt();
+        this.score = in.getInt();
+        int index = in.get();
+        if (index < 0 || index >= this.pieces.length) {
+            throw new IllegalArgumentException("Bad piece index: " + index);
+        }
+        this.pieceIndex = index;
+        this.gameOn = in.get() != 0;
+    }
+
+    /**
+     * Score for clearing the given number of rows at once, as in JTetris.
+     */
+    public static int rowScore(int cleared) {
+        switch (cleared) {
+            case 0:
+                return 0;
+            case 1:
+                return 5;
+            case 2:
+                return 10;
+            case 3:
+                return 20;
+            case 4:
+                return 40;
+            default:
+                return 50;
+        }
+    }
+
+    /**
+     * Returns the n-th counterclockwise rotation of the given piece.
+     */
+    public static Piece rotation(Piece piece, int n) {
+        for (int i = 0; i < n; i++) {
+            piece = piece.fastRotation();
+        }
+        return piece;
+    }
+
+    /**
+     * Returns how many rotations take root to rotated, or -1 if rotated is
+     * not a rotation of root.
+     */
+    public static int rotationIndex(Piece root, Piece rotated) {
+        Piece current = root;
+        int n = 0;
+        do {
+            if (current.equals(rotated)) {
+                return n;
+            }
+            current = current.fastRotation();
+            n++;
+        } while (!current.equals(root));
+        return -1;
+    }
+}
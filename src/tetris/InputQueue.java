@@ -0,0 +1,133 @@
+// InputQueue.java
+
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the key verbs (JTetris.LEFT, RIGHT, ROTATE, DROP) typed between
+ * two simulation steps so they can be played all at once, with a single
+ * undo()/place() of the piece, see JTetris.playInput().
+ * <p>
+ * Verbs are not kept one by one: they are added up as they come into a
+ * batch -- the net number of columns to move (LEFT then RIGHT is nothing),
+ * the number of rotations modulo 4, and whether to drop -- packed in 16
+ * bits. post() adds a verb and drain() takes a batch, each with a
+ * compare-and-set, so any number of threads can post without locking and
+ * an auto-repeat burst costs a few atomic operations, whatever its length.
+ * A batch is played as its rotations, then its moves, then its drop.
+ * <p>
+ * A drop closes its batch, since what comes after it must be played after
+ * it -- DROP then LEFT slides the piece under an overhang. The verbs after
+ * a drop go into a new batch. Up to MAX_BATCHES batches are packed in a
+ * long, and drain() takes them one at a time, in order. Verbs after the
+ * drop of the last one are ignored until the queue is drained.
+ */
+public class InputQueue {
+
+    /**
+     * The most batches waiting at once.
+     */
+    public static final int MAX_BATCHES = 4;
+
+    // bits 0-1: rotations, bit 2: drop, bit 3: not empty, bits 8-15: move
+    private static final int ROTATIONS = 0x3;
+    private static final int DROP = 0x4;
+    private static final int NOT_EMPTY = 0x8;
+    private static final int MOVE_SHIFT = 8;
+    private static final int BATCH_BITS = 16;
+    private static final long BATCH_MASK = 0xffff;
+
+    // moves beyond this are pointless on any board JTetris draws
+    private static final int MAX_MOVE = 127;
+
+    // the batches in 16 bits each, the first one in the lowest bits
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Adds a verb to the last batch, or to a new one if the last one has a
+     * drop -- or nowhere if there are MAX_BATCHES batches already. Returns
+     * true if the queue was empty before, i.e. the caller should make sure
+     * it gets drained.
+     */
+    public boolean post(int verb) {
+        while (true) {
+            long all = this.batches.get();
+            // batches are packed from the lowest bits: the last one is the
+            // highest non-zero one
+            int last = (all == 0) ? 0 : (63 - Long.numberOfLeadingZeros(all)) / BATCH_BITS;
+            int current = (int) ((all >>> (last * BATCH_BITS)) & BATCH_MASK);
+            if ((current & DROP) != 0) {
+                if (last == MAX_BATCHES - 1) {
+                    return false;
+                }
+                last++;
+                current = 0;
+            }
+            int rotations = current & ROTATIONS;
+            int move = getMove(current);
+            boolean drop = (current & DROP) != 0;
+
+            switch (verb) {
+                case JTetris.LEFT:
+                    move = Math.max(-MAX_MOVE, move - 1);
+                    break;
+                case JTetris.RIGHT:
+                    move = Math.min(MAX_MOVE, move + 1);
+                    break;
+                case JTetris.ROTATE:
+                    rotations = (rotations + 1) & ROTATIONS;
+                    break;
+                case JTetris.DROP:
+                    drop = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not a key verb: " + verb);
+            }
+
+            int next = NOT_EMPTY | rotations | (drop ? DROP : 0) | ((move & 0xff) << MOVE_SHIFT);
+            int shift = last * BATCH_BITS;
+            long updated = (all & ~(BATCH_MASK << shift)) | ((long) next << shift);
+            if (this.batches.compareAndSet(all, updated)) {
+                return all == 0;
+            }
+        }
+    }
+
+    /**
+     * Takes the first batch, leaving the ones after it, if any, to the next
+     * calls. Returns 0 if there was nothing, otherwise a batch to read with
+     * getRotations(), getMove() and isDrop().
+     */
+    public int drain() {
+        while (true) {
+            long all = this.batches.get();
+            if (this.batches.compareAndSet(all, all >>> BATCH_BITS)) {
+                return (int) (all & BATCH_MASK);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.batches.get() == 0;
+    }
+
+    /**
+     * Returns the number of rotations in the batch, 0 to 3.
+     */
+    public static int getRotations(int batch) {
+        return batch & ROTATIONS;
+    }
+
+    /**
+     * Returns the net number of columns to move in the batch, negative to
+     * the left.
+     */
+    public static int getMove(int batch) {
+        return (byte) (batch >>> MOVE_SHIFT);
+    }
+
+    public static boolean isDrop(int batch) {
+        return (batch & DROP) != 0;
+    }
+}
@@ -0,0 +1,120 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InputQueueTest {
+
+    @Test
+    public void testCoalesce() {
+        InputQueue queue = new InputQueue();
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.post(JTetris.LEFT));
+        assertFalse(queue.post(JTetris.RIGHT));
+        assertFalse(queue.post(JTetris.LEFT));
+        assertFalse(queue.post(JTetris.LEFT));
+        for (int i = 0; i < 5; i++) {
+            queue.post(JTetris.ROTATE);
+        }
+
+        int batch = queue.drain();
+        assertTrue(batch != 0);
+        assertEquals(-2, InputQueue.getMove(batch));
+        assertEquals(1, InputQueue.getRotations(batch));
+        assertFalse(InputQueue.isDrop(batch));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.drain());
+
+        // LEFT then RIGHT is nothing to do, but still a batch to play
+        queue.post(JTetris.LEFT);
+        queue.post(JTetris.RIGHT);
+        queue.post(JTetris.DROP);
+        batch = queue.drain();
+        assertTrue(batch != 0);
+        assertEquals(0, InputQueue.getMove(batch));
+        assertTrue(InputQueue.isDrop(batch));
+    }
+
+    @Test
+    public void testDropClosesBatch() {
+        InputQueue queue = new InputQueue();
+        assertTrue(queue.post(JTetris.RIGHT));
+        queue.post(JTetris.DROP);
+        // a tuck: these come after the drop
+        assertFalse(queue.post(JTetris.LEFT));
+        queue.post(JTetris.LEFT);
+        queue.post(JTetris.ROTATE);
+
+        int batch = queue.drain();
+        assertEquals(1, InputQueue.getMove(batch));
+        assertEquals(0, InputQueue.getRotations(batch));
+        assertTrue(InputQueue.isDrop(batch));
+        assertFalse(queue.isEmpty());
+
+        // the rest is the next batch, and takes new verbs as usual
+        queue.post(JTetris.LEFT);
+        batch = queue.drain();
+        assertEquals(-3, InputQueue.getMove(batch));
+        assertEquals(1, InputQueue.getRotations(batch));
+        assertFalse(InputQueue.isDrop(batch));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.drain());
+    }
+
+    @Test
+    public void testDropsKeepOrder() {
+        // DROP, LEFT, DROP, RIGHT: RIGHT comes after the second drop
+        InputQueue queue = new InputQueue();
+        queue.post(JTetris.DROP);
+        queue.post(JTetris.LEFT);
+        queue.post(JTetris.DROP);
+        queue.post(JTetris.RIGHT);
+
+        assertTrue(InputQueue.isDrop(queue.drain()));
+        int batch = queue.drain();
+        assertEquals(-1, InputQueue.getMove(batch));
+        assertTrue(InputQueue.isDrop(batch));
+        batch = queue.drain();
+        assertEquals(1, InputQueue.getMove(batch));
+        assertFalse(InputQueue.isDrop(batch));
+        assertTrue(queue.isEmpty());
+
+        // past the last batch's drop, verbs are ignored
+        for (int i = 0; i < InputQueue.MAX_BATCHES; i++) {
+            queue.post(JTetris.DROP);
+        }
+        queue.post(JTetris.LEFT);
+        for (int i = 0; i < InputQueue.MAX_BATCHES; i++) {
+            batch = queue.drain();
+            assertTrue(InputQueue.isDrop(batch));
+            assertEquals(0, InputQueue.getMove(batch));
+        }
+        assertEquals(0, queue.drain());
+    }
+
+    @Test
+    public void testConcurrentPosts() throws InterruptedException {
+        final InputQueue queue = new InputQueue();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int verb = (t % 2 == 0) ? JTetris.LEFT : JTetris.RIGHT;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    queue.post(verb);
+                    queue.post(JTetris.ROTATE);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // no rotation was lost: 40000 of them are 0 modulo 4, one more is 1
+        queue.post(JTetris.ROTATE);
+        int batch = queue.drain();
+        assertEquals(1, InputQueue.getRotations(batch));
+        assertTrue(Math.abs(InputQueue.getMove(batch)) <= 127);
+    }
+}
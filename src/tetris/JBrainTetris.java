@@ -2,6 +2,8 @@ package tetris;
 
 import java.awt.*;
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 import javax.swing.event.*;
 
@@ -10,13 +12,20 @@ import javax.swing.event.*;
 public class JBrainTetris extends JTetris {
 
     private Brain brain;
+    private Brain probeBrain; // the brain without the exporter, for pickWorstPiece()
     private Brain.Move bestMove;
     private int dernierI;
     private JCheckBox brainMode;
     private JCheckBox animation;
     private JPanel pan;
     private JSlider adversaire;
+    // the brain checkbox and adversary slider as last set, for tick() and
+    // pickNextPiece(), which run off the Swing thread with a game loop
+    private volatile boolean brainOn;
+    private volatile int adversity;
     private JLabel randomizedI;
+    private JCheckBox perfMode;
+    private PerformanceOverlay overlay;
 
     public static void main(String[] args) {
         JBrainTetris tetris = new JBrainTetris(16);
@@ -42,7 +51,25 @@ public class JBrainTetris extends JTetris {
         randomizedI = new JLabel("");
         panel.add(randomizedI);
 
+        perfMode = new JCheckBox("Perf overlay");
+        panel.add(perfMode);
+        overlay = new PerformanceOverlay(metrics);
+        overlay.setVisible(false);
+        panel.add(overlay);
+
+        perfMode.addItemListener(e -> {
+            if (perfMode.isSelected()) {
+                overlay.start();
+            } else {
+                overlay.stop();
+            }
+            panel.revalidate();
+        });
+
+        adversaire.addChangeListener(e -> adversity = adversaire.getValue());
+
         brainMode.addChangeListener(e -> {
+            brainOn = brainMode.isSelected();
             if (brainMode.isSelected()) {
                 animation.setEnabled(true);
             } else {
@@ -55,18 +82,80 @@ public class JBrainTetris extends JTetris {
 
     public JBrainTetris(int pixels) {
         super(pixels);
-        brain = new DefaultBrain();
+        brain = createBrain(System.getProperty("tetris.brain"));
+        int cache = Integer.getInteger("tetris.cache", 0);
+        if (cache > 0) {
+            brain = caching(brain, cache);
+        }
+        probeBrain = brain;
+        String export = System.getProperty("tetris.export");
+        if (export != null) {
+            brain = exporting(brain, export);
+        }
         bestMove = null;
         dernierI = count;
     }
 
+    /**
+     * Instantiates the Brain class named by the tetris.brain system property
+     * (e.g. -Dtetris.brain=tetris.MonteCarloBrain), or a DefaultBrain if it
+     * is not set or can't be created.
+     */
+    static Brain createBrain(String className) {
+        if (className != null) {
+            try {
+                return (Brain) Class.forName(className).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                System.err.println("Could not create brain " + className + ": " + e);
+            }
+        }
+        return new DefaultBrain();
+    }
+
+    /**
+     * Wraps the brain in a cache of the given number of moves
+     * (-Dtetris.cache=moves, none by default), see CachingBrain. Its hit
+     * rate and size can be watched over JMX. Only worth it for brains whose
+     * answers depend on the board alone: a time budgeted or random brain
+     * would have its first answer replayed.
+     */
+    private static Brain caching(Brain brain, int moves) {
+        CachingBrain cache = new CachingBrain(brain, moves);
+        cache.register();
+        return cache;
+    }
+
+    /**
+     * Wraps the brain so every move it picks is exported to the given file
+     * (-Dtetris.export=file), see TrainingExporter. The file is closed when
+     * the JVM exits. Only the moves played are exported: pickWorstPiece()
+     * asks probeBrain, which is not wrapped.
+     */
+    private static Brain exporting(Brain brain, String file) {
+        try {
+            TrainingExporter exporter = new TrainingExporter(Paths.get(file), WIDTH, HEIGHT + TOP_SPACE);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    exporter.close();
+                } catch (IOException e) {
+                    System.err.println("Could not finish export to " + file + ": " + e);
+                }
+            }));
+            return new RecordingBrain(brain, exporter);
+        } catch (IOException e) {
+            System.err.println("Could not export to " + file + ": " + e);
+            return brain;
+        }
+    }
+
     @Override
     public void tick(int verbe) {
-        if (brainMode.isSelected()) {
+        if (brainOn) {
+            final long start = System.nanoTime();
             board.undo();
 
             if (dernierI != count || bestMove == null) {
-                bestMove = brain.bestMove(board, currentPiece, HEIGHT);
+                bestMove = timedBestMove(brain, currentPiece, moveDeadline(start, 1));
                 dernierI = count;
             }
 
@@ -81,28 +170,65 @@ public class JBrainTetris extends JTetris {
                     super.tick(ROTATE);
                 }
             }
+            super.tick(verbe);
+            metrics.brainTick.recordSince(start);
+            return;
         }
         super.tick(verbe);
     }
 
+    /**
+     * Returns the deadline for the brain when it has the given number of
+     * moves to find, starting from a tick that began at tickStart: the
+     * current timer period, minus what the tick has used so far and a
+     * quarter kept for the game itself, shared between the moves -- and at
+     * least 1ms each.
+     */
+    protected long moveDeadline(long tickStart, int moves) {
+        final long now = System.nanoTime();
+        long left = timer.getDelay() * 1000000L * 3 / 4 - (now - tickStart);
+        return now + Math.max(left / moves, 1000000L);
+    }
+
+    /**
+     * Asks the given brain for its move on the current board, recording how
+     * long it took in the bestMove histogram and what it allocated in
+     * bestMoveBytes. Anytime brains are given the deadline, others ignore it.
+     */
+    private Brain.Move timedBestMove(Brain brain, Piece piece, long deadline) {
+        final long startBytes = AllocationMeter.threadAllocatedBytes();
+        final long start = System.nanoTime();
+        Brain.Move move;
+        if (brain instanceof AnytimeBrain) {
+            move = ((AnytimeBrain) brain).bestMove(board, piece, HEIGHT, deadline);
+        } else {
+            move = brain.bestMove(board, piece, HEIGHT);
+        }
+        metrics.bestMove.recordSince(start);
+        metrics.bestMoveBytes.recordSince(startBytes);
+        return move;
+    }
+
     public Piece pickNextPiece() {
-        if (random.nextInt(100) >= adversaire.getValue()) {
-            randomizedI.setText("done");
+        if (random.nextInt(100) >= adversity) {
+            onSwingThread(() -> randomizedI.setText("done"));
             return super.pickNextPiece();
         }
 
-        randomizedI.setText("*done*");
+        onSwingThread(() -> randomizedI.setText("*done*"));
         return pickWorstPiece();
     }
 
     private Piece pickWorstPiece() {
         java.util.List<Piece> pieces = Arrays.asList(Piece.getPieces());
-        Brain.Move worst = brain.bestMove(board, pieces.get(0), HEIGHT);
+        long deadline = moveDeadline(System.nanoTime(), pieces.size());
+        Brain.Move worst = timedBestMove(probeBrain, pieces.get(0), deadline);
         for (Piece piece : pieces) {
             if (piece.equals(worst.piece)) {
                 continue;
             }
-            Brain.Move bigger = brain.bestMove(board, piece, HEIGHT);
+            deadline = moveDeadline(System.nanoTime(), pieces.size());
+            Brain.Move bigger = timedBestMove(probeBrain, piece, deadline);
             if (bigger.score > worst.score) {
                 worst = bigger;
             }
@@ -90,6 +90,19 @@ public class JTetris extends JComponent {
 
     public final int DELAY = 400; // milliseconds per tick
 
+    // Latency histograms and counters, see GameMetrics
+    protected final GameMetrics metrics = GameMetrics.get();
+
+    // Runs the game instead of the timer with -Dtetris.fixedStep=true
+    protected final GameLoop loop;
+
+    // Key verbs waiting for playInput()
+    protected final InputQueue inputQueue = new InputQueue();
+
+    // What paintBoard() draws: the board as of the last publish(), read
+    // without locking by the Swing thread or the game loop
+    protected volatile BoardSnapshot shown;
+
     /**
      * Creates a new JTetris where each tetris square is drawn with the given
      * number of pixels.
@@ -104,6 +117,7 @@ public class JTetris extends JComponent {
 
         this.pieces = Piece.getPieces();
         this.board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+        this.loop = Boolean.getBoolean("tetris.fixedStep") ? new GameLoop(this) : null;
 
         /*
          * Register key handlers that call tick with the appropriate constant.
@@ -116,48 +130,48 @@ public class JTetris extends JComponent {
         // LEFT
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(LEFT);
+                input(LEFT);
             }
         }, "left", KeyStroke.getKeyStroke('4'), WHEN_IN_FOCUSED_WINDOW);
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(LEFT);
+                input(LEFT);
             }
         }, "left", KeyStroke.getKeyStroke('j'), WHEN_IN_FOCUSED_WINDOW);
 
         // RIGHT
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(RIGHT);
+                input(RIGHT);
             }
         }, "right", KeyStroke.getKeyStroke('6'), WHEN_IN_FOCUSED_WINDOW);
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(RIGHT);
+                input(RIGHT);
             }
         }, "right", KeyStroke.getKeyStroke('l'), WHEN_IN_FOCUSED_WINDOW);
 
         // ROTATE
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(ROTATE);
+                input(ROTATE);
             }
         }, "rotate", KeyStroke.getKeyStroke('5'), WHEN_IN_FOCUSED_WINDOW);
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(ROTATE);
+                input(ROTATE);
             }
         }, "rotate", KeyStroke.getKeyStroke('k'), WHEN_IN_FOCUSED_WINDOW);
 
         // DROP
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(DROP);
+                input(DROP);
             }
         }, "drop", KeyStroke.getKeyStroke('0'), WHEN_IN_FOCUSED_WINDOW);
         registerKeyboardAction(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                tick(DROP);
+                input(DROP);
             }
         }, "drop", KeyStroke.getKeyStroke('n'), WHEN_IN_FOCUSED_WINDOW);
 
@@ -172,10 +186,89 @@ public class JTetris extends JComponent {
         requestFocusInWindow();
     }
 
+    /**
+     * Queues a key verb for playInput(), which runs on the next step of the
+     * game loop if there is one, or else as soon as the Swing thread is done
+     * with the key events already waiting -- so a burst of auto-repeated
+     * keys is played at once.
+     */
+    protected void input(int verb) {
+        if (inputQueue.post(verb)) {
+            if (loop != null) {
+                loop.wake();
+            } else {
+                SwingUtilities.invokeLater(this::playInput);
+            }
+        }
+    }
+
+    /**
+     * Plays the key verbs queued since the last call as a single move of the
+     * current piece: one undo(), then the queued rotations, moves and drop
+     * are tried in that order with Board.canPlace(), each one stopping at
+     * the first that doesn't fit, and one place() at the end. Verbs queued
+     * after a drop are left for the next call, which is scheduled here when
+     * there is no game loop to make it.
+     */
+    public synchronized void playInput() {
+        final int batch = inputQueue.drain();
+        if (batch == 0 || !gameOn || currentPiece == null) {
+            return;
+        }
+        final long startBytes = AllocationMeter.threadAllocatedBytes();
+        final long start = System.nanoTime();
+        board.undo(); // remove the piece from its old position
+
+        Piece piece = currentPiece;
+        int x = currentX;
+        int y = currentY;
+
+        for (int i = 0; i < InputQueue.getRotations(batch); i++) {
+            // same centering as computeNewPosition()
+            Piece rotated = piece.fastRotation();
+            int rx = x + (piece.getWidth() - rotated.getWidth()) / 2;
+            int ry = y + (piece.getHeight() - rotated.getHeight()) / 2;
+            if (!board.canPlace(rotated, rx, ry)) {
+                break;
+            }
+            piece = rotated;
+            x = rx;
+            y = ry;
+        }
+
+        final int move = InputQueue.getMove(batch);
+        final int step = Integer.signum(move);
+        for (int i = 0; i != move && board.canPlace(piece, x + step, y); i += step) {
+            x += step;
+        }
+
+        if (InputQueue.isDrop(batch)) {
+            y = Math.min(y, board.dropHeight(piece, x));
+        }
+
+        // moving the piece gives it one more DOWN before it lands, as in tick()
+        moved = (piece != currentPiece || x != currentX || y != currentY);
+
+        int result = setCurrent(piece, x, y);
+        if (result == Board.PLACE_ROW_FILLED) {
+            repaint();
+        } else if (result > Board.PLACE_ROW_FILLED) {
+            board.place(currentPiece, currentX, currentY);
+            moved = false;
+        }
+        publish();
+        metrics.tick.recordSince(start);
+        metrics.tickBytes.recordSince(startBytes);
+
+        if (loop == null && !inputQueue.isEmpty()) {
+            SwingUtilities.invokeLater(this::playInput);
+        }
+    }
+
     /**
      * Sets the internal state and starts the timer so the game is happening.
      */
-    public void startGame() {
+    public synchronized void startGame() {
         // cheap way to reset the board state
         board = new Board(WIDTH, HEIGHT + TOP_SPACE);
 
@@ -198,7 +291,12 @@ public class JTetris extends JComponent {
         enableButtons();
         timeLabel.setText(" ");
         addNewPiece();
-        timer.start();
+        publish();
+        if (loop != null) {
+            loop.start();
+        } else {
+            timer.start();
+        }
         startTime = System.currentTimeMillis();
     }
 
@@ -206,20 +304,28 @@ public class JTetris extends JComponent {
      * Sets the enabling of the start/stop buttons based on the gameOn state.
      */
     private void enableButtons() {
-        startButton.setEnabled(!gameOn);
-        stopButton.setEnabled(gameOn);
+        final boolean on = gameOn;
+        onSwingThread(() -> {
+            startButton.setEnabled(!on);
+            stopButton.setEnabled(on);
+        });
     }
 
     /**
      * Stops the game.
      */
-    public void stopGame() {
+    public synchronized void stopGame() {
         gameOn = false;
         enableButtons();
-        timer.stop();
+        if (loop != null) {
+            loop.stop();
+            repaint(); // the last frame, the Swing way
+        } else {
+            timer.stop();
+        }
 
         long delta = (System.currentTimeMillis() - startTime) / 10;
-        timeLabel.setText(Double.toString(delta / 100.0) + " seconds");
+        onSwingThread(() -> timeLabel.setText(Double.toString(delta / 100.0) + " seconds"));
 
     }
 
@@ -272,6 +378,7 @@ public class JTetris extends JComponent {
     public void addNewPiece() {
         count++;
         score++;
+        metrics.addPiece();
 
         if (testMode && count == TEST_LIMIT + 1) {
             stopGame();
@@ -305,8 +412,45 @@ public class JTetris extends JComponent {
      * Updates the count/score labels with the latest values.
      */
     private void updateCounters() {
-        countLabel.setText("Pieces " + count);
-        scoreLabel.setText("Score " + score);
+        final String pieces = "Pieces " + count;
+        final String points = "Score " + score;
+        onSwingThread(() -> {
+            countLabel.setText(pieces);
+            scoreLabel.setText(points);
+        });
+    }
+
+    /**
+     * Runs the task now if on the Swing thread, otherwise later on it -- for
+     * label updates coming from the game loop.
+     */
+    protected static void onSwingThread(Runnable task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
+        } else {
+            SwingUtilities.invokeLater(task);
+        }
+    }
+
+    /**
+     * Publishes a snapshot of the board, falling piece included, for
+     * paintBoard() to draw. Called once the board is in a state worth
+     * showing, at the end of every move.
+     */
+    protected void publish() {
+        shown = board.publish();
+    }
+
+    /**
+     * Drops repaint requests while the game loop runs, since it draws every
+     * frame itself.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        if (loop != null && loop.isRunning()) {
+            return;
+        }
+        super.repaint(tm, x, y, width, height);
     }
 
     /**
@@ -337,8 +481,7 @@ public class JTetris extends JComponent {
                 break;
 
             case ROTATE:
-                // newPiece = newPiece.fastRotation();
-                newPiece = newPiece.computeNextRotation();
+                newPiece = newPiece.fastRotation();
 
                 // tricky: make the piece appear to rotate about its center
                 // can't just leave it at the same lower-left origin as the
@@ -387,6 +530,10 @@ public class JTetris extends JComponent {
         if (!this.gameOn) {
             return;
         }
+        final long startBytes = AllocationMeter.threadAllocatedBytes();
+        final long start = System.nanoTime();
+        TetrisEvents.Tick event = new TetrisEvents.Tick();
+        event.begin();
 
         if (currentPiece != null) {
             this.board.undo(); // remove the piece from its old position
@@ -426,6 +573,7 @@ public class JTetris extends JComponent {
 
             int cleared = board.clearRows();
             if (cleared > 0) {
+                metrics.addRowsCleared(cleared);
                 // score goes up by 5, 10, 20, 40 for row clearing
                 // clearing 4 gets you a beep!
                 switch (cleared) {
@@ -461,6 +609,15 @@ public class JTetris extends JComponent {
         // Note if the player made a successful non-DOWN move --
         // used to detect if the piece has landed on the next tick()
         moved = (!failed && verb != DOWN);
+
+        publish();
+        metrics.tick.recordSince(start);
+        metrics.tickBytes.recordSince(startBytes);
+        if (event.shouldCommit()) {
+            event.verb = verb;
+            event.count = count;
+            event.commit();
+        }
     }
 
     /**
@@ -518,12 +675,29 @@ public class JTetris extends JComponent {
      * rows that are filled all the way across in green.
      */
     public void paintComponent(Graphics g) {
+        paintBoard(g);
+    }
+
+    /**
+     * Does the drawing for paintComponent(), and for the game loop's frames.
+     * Draws the last published snapshot, so it needs no lock and never sees
+     * the board in the middle of a move.
+     */
+    protected void paintBoard(Graphics g) {
+        final long start = System.nanoTime();
+        TetrisEvents.Paint event = new TetrisEvents.Paint();
+        event.begin();
 
         // Draw a rect around the whole thing
         g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
 
+        final BoardSnapshot snapshot = shown;
+        if (snapshot == null) {
+            return; // nothing played yet
+        }
+
         // Draw the line separating the top
-        int spacerY = yPixel(board.getHeight() - TOP_SPACE - 1);
+        int spacerY = yPixel(snapshot.getHeight() - TOP_SPACE - 1);
         g.drawLine(0, spacerY, getWidth() - 1, spacerY);
 
         // check if we are drawing with clipping
@@ -536,7 +710,7 @@ public class JTetris extends JComponent {
         // Factor a few things out to help the optimizer
         final int dx = Math.round(dX() - 2);
         final int dy = Math.round(dY() - 2);
-        final int bWidth = board.getWidth();
+        final int bWidth = snapshot.getWidth();
 
         int x, y;
         // Loop through and draw all the blocks
@@ -555,10 +729,10 @@ public class JTetris extends JComponent {
 
 
             // draw from 0 up to the col height
-            final int yHeight = board.getColumnHeight(x);
+            final int yHeight = snapshot.getColumnHeight(x);
             for (y = 0; y < yHeight; y++) {
-                if (board.getGrid(x, y)) {
-                    boolean filled = (board.getRowWidth(y) == bWidth);
+                if (snapshot.getGrid(x, y)) {
+                    boolean filled = (snapshot.getRowWidth(y) == bWidth);
                     if (filled)
                         g.setColor(Color.green);
 
@@ -571,6 +745,12 @@ public class JTetris extends JComponent {
                 }
             }
         }
+
+        metrics.paint.recordSince(start);
+        if (event.shouldCommit()) {
+            event.clipArea = (clip == null) ? -1 : clip.width * clip.height;
+            event.commit();
+        }
     }
 
     /**
@@ -579,6 +759,9 @@ public class JTetris extends JComponent {
     public void updateTimer() {
         double value = ((double) speed.getValue()) / speed.getMaximum();
         timer.setDelay((int) (DELAY - value * DELAY));
+        if (loop != null) {
+            loop.setStepMillis(timer.getDelay());
+        }
     }
 
     /**
@@ -0,0 +1,199 @@
+// LatencyHistogram.java
+
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free latency histogram. Values are nanoseconds and are
+ * stored in log-linear buckets: every power of two is split into
+ * SUB_BUCKETS linear sub-buckets, so a recorded value is known to within
+ * about 1/SUB_BUCKETS (~3%) of its real value, all the way from 1ns to
+ * several minutes.
+ * <p>
+ * record() is a couple of shifts and one atomic increment, so it is cheap
+ * enough to call on every tick and every paint. Percentiles are computed on
+ * demand by walking the buckets.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+    // 2^SUB_BITS linear sub-buckets per power of two
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // highest power of two that is tracked (2^40 ns is about 18 minutes)
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts;
+    private final AtomicLong total;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    // most recent value, written by the game thread and read by the
+    // overlay and JMX threads
+    private volatile long last;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Records one latency, in nanoseconds. Negative values are counted as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        this.counts.incrementAndGet(bucketIndex(nanos));
+        this.total.incrementAndGet();
+        this.sum.addAndGet(nanos);
+        this.last = nanos;
+
+        long current = this.max.get();
+        while (nanos > current && !this.max.compareAndSet(current, nanos)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given System.nanoTime() value.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /*
+     * Values below SUB_BUCKETS get one bucket each, above that each power of
+     * two gets SUB_BUCKETS buckets indexed by the bits right after the
+     * leading one.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // the highest value that falls into the given bucket
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long low = (1L << exponent) + (sub << (exponent - SUB_BITS));
+        return low + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Returns the value below which the given fraction (0.0 - 1.0) of the
+     * recorded values fall, in nanoseconds. Returns 0 if nothing has been
+     * recorded yet.
+     */
+    public long percentile(double fraction) {
+        long count = this.total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    public long getCount() {
+        return this.total.get();
+    }
+
+    /**
+     * Returns the sum of all recorded values, in nanoseconds. Together with
+     * getCount() this gives the mean over any window between two reads.
+     */
+    public long getSumNanos() {
+        return this.sum.get();
+    }
+
+    /**
+     * Returns the most recently recorded value, in nanoseconds.
+     */
+    public long getLastNanos() {
+        return this.last;
+    }
+
+    public double getMeanMicros() {
+        long count = this.total.get();
+        return (count == 0) ? 0.0 : this.sum.get() / (count * 1000.0);
+    }
+
+    public double getP50Micros() {
+        return percentile(0.50) / 1000.0;
+    }
+
+    public double getP90Micros() {
+        return percentile(0.90) / 1000.0;
+    }
+
+    public double getP99Micros() {
+        return percentile(0.99) / 1000.0;
+    }
+
+    public double getP999Micros() {
+        return percentile(0.999) / 1000.0;
+    }
+
+    public double getMaxMicros() {
+        return this.max.get() / 1000.0;
+    }
+
+    public double getLastMicros() {
+        return this.last / 1000.0;
+    }
+
+    /**
+     * Forgets everything recorded so far. Values recorded concurrently with
+     * a reset may or may not survive it.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.total.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+        this.last = 0;
+    }
+
+    /*
+     * One line summary, in microseconds, used by the periodic text dump.
+     */
+    public String toString() {
+        return String.format("%-10s n=%-8d mean=%9.1f p50=%9.1f p90=%9.1f p99=%9.1f p99.9=%9.1f max=%9.1f (us)",
+                this.name, getCount(), getMeanMicros(), getP50Micros(), getP90Micros(),
+                getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+}
@@ -0,0 +1,27 @@
+// LatencyHistogramMBean.java
+
+package tetris;
+
+/**
+ * JMX view of a LatencyHistogram. All latencies are reported in
+ * microseconds.
+ */
+public interface LatencyHistogramMBean {
+    public long getCount();
+
+    public double getMeanMicros();
+
+    public double getP50Micros();
+
+    public double getP90Micros();
+
+    public double getP99Micros();
+
+    public double getP999Micros();
+
+    public double getMaxMicros();
+
+    public double getLastMicros();
+
+    public void reset();
+}
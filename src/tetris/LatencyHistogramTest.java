@@ -0,0 +1,51 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram("empty");
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.percentile(0.99));
+        assertEquals(0.0, h.getMeanMicros(), 0.0);
+    }
+
+    @Test
+    public void testBucketsCoverValues() {
+        // every value must land in a bucket whose upper bound is >= the value
+        // and within ~3% of it
+        for (long v = 1; v < (1L << 40); v = v * 3 + 1) {
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(v));
+            assertTrue(upper >= v);
+            assertTrue(upper - v <= v / 32 + 1);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram("uniform");
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L); // 1us .. 1000us
+        }
+
+        assertEquals(1000, h.getCount());
+        assertEquals(500.5, h.getMeanMicros(), 0.01);
+        assertEquals(500.0, h.getP50Micros(), 500 * 0.04);
+        assertEquals(990.0, h.getP99Micros(), 990 * 0.04);
+        assertEquals(1000.0, h.getMaxMicros(), 0.0);
+        assertTrue(h.getP999Micros() <= h.getMaxMicros());
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram h = new LatencyHistogram("reset");
+        h.record(12345);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.percentile(0.5));
+    }
+}
@@ -0,0 +1,213 @@
+// LookaheadBrain.java
+
+package tetris;
+
+/**
+ * A DefaultBrain that also looks at the pieces to come. Depth 1 is
+ * DefaultBrain's own search: the best placement by rateBoard(). At depth d,
+ * each placement of the current piece is scored by the average, over the
+ * seven pieces that may come next (JTetris picks them uniformly), of the
+ * best depth d - 1 score reachable with that piece. Placements that top out
+ * score GAME_OVER.
+ * <p>
+ * The search deepens iteratively -- depth 1, 2, 3... up to maxDepth -- and
+ * as an AnytimeBrain it stops at the deadline and returns the answer of the
+ * deepest search that finished. Depth 2 takes a few milliseconds on a
+ * standard board, depth 3 a few hundred.
+ */
+public class LookaheadBrain extends DefaultBrain implements AnytimeBrain {
+
+    /**
+     * Score of a position where no piece fits anymore.
+     */
+    public static final double GAME_OVER = 1e6;
+
+    protected static final Piece[][] ROTATIONS;
+
+    static {
+        Piece[] pieces = Piece.getPieces();
+        ROTATIONS = new Piece[pieces.length][];
+        for (int i = 0; i < pieces.length; i++) {
+            ROTATIONS[i] = rotations(pieces[i]);
+        }
+    }
+
+    /*
+     * Thrown through the recursion when the deadline passes. There is only
+     * one, without a stack trace, since it is just a way out.
+     */
+    protected static final RuntimeException TIMEOUT = new RuntimeException("deadline passed", null, false, false) {
+        private static final long serialVersionUID = 1L;
+    };
+
+    /**
+     * What one bestMove() search needs all the way down: the limit and the
+     * deadline. Subclasses can keep more in it for the duration of a search,
+     * see newSearch().
+     */
+    protected static class Search {
+        protected final int limitHeight;
+        protected final long deadline;
+
+        protected Search(int limitHeight, long deadline) {
+            this.limitHeight = limitHeight;
+            this.deadline = deadline;
+        }
+    }
+
+    private final int maxDepth;
+    private final long budgetNanos;
+
+    /**
+     * Creates a brain searching up to depth 2, with 100ms per move when
+     * called without a deadline.
+     */
+    public LookaheadBrain() {
+        this(2, 100);
+    }
+
+    public LookaheadBrain(int maxDepth, long budgetMillis) {
+        this.maxDepth = maxDepth;
+        this.budgetNanos = budgetMillis * 1000000L;
+    }
+
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight) {
+        return bestMove(board, piece, limitHeight, System.nanoTime() + this.budgetNanos);
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, long deadline) {
+        // depth 1 always runs to completion, it is what DefaultBrain does
+        Brain.Move best = super.bestMove(board, piece, limitHeight);
+        if (best == null) {
+            return null;
+        }
+
+        Piece[] rotations = rotations(piece);
+        Search search = newSearch(limitHeight, deadline);
+
+        for (int depth = 2; depth <= this.maxDepth; depth++) {
+            // a fresh copy for each iteration, since a timeout leaves levels
+            // pushed on it
+            Board start = new Board(board.getWidth(), board.getHeight());
+            start.copyFrom(board);
+            try {
+                Brain.Move move = searchRoot(start, rotations, depth, search);
+                if (move != null) {
+                    best = move;
+                }
+            } catch (RuntimeException e) {
+                if (e != TIMEOUT) {
+                    throw e;
+                }
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the context of a new search, shared by all its iterations.
+     */
+    protected Search newSearch(int limitHeight, long deadline) {
+        return new Search(limitHeight, deadline);
+    }
+
+    // one full iteration of the deepening at the given depth
+    private Brain.Move searchRoot(Board board, Piece[] rotations, int depth, Search search) {
+        Brain.Move best = null;
+
+        for (Piece current : rotations) {
+            final int xBound = board.getWidth() - current.getWidth() + 1;
+            for (int x = 0; x < xBound; x++) {
+                int y = board.dropHeight(current, x);
+                if (!pushPlace(board, current, x, y, search.limitHeight)) {
+                    continue;
+                }
+
+                double score = chanceValue(board, depth - 1, search);
+                board.pop();
+                if (best == null || score < best.score) {
+                    best = new Brain.Move();
+                    best.piece = current;
+                    best.x = x;
+                    best.y = y;
+                    best.score = score;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Pushes a new level on the board, places the piece and clears rows.
+     * Returns true if that worked, and the caller must then pop() the level
+     * when done with it; returns false, with the board unchanged, if the
+     * placement is impossible or sticks up too far by DefaultBrain.fits(),
+     * the same rule as the depth 1 search.
+     * <p>
+     * The whole search runs on a single board this way. When TIMEOUT is
+     * thrown the levels on the way out are not popped, so the board is left
+     * in a search state and should be thrown away.
+     */
+    protected static boolean pushPlace(Board board, Piece piece, int x, int y, int limitHeight) {
+        if (!fits(piece, y, limitHeight)) {
+            return false;
+        }
+        board.push();
+        if (board.place(piece, x, y) > Board.PLACE_ROW_FILLED) {
+            board.pop();
+            return false;
+        }
+        board.clearRows();
+        return true;
+    }
+
+    /**
+     * The value of a board before the next piece is known: the average over
+     * all pieces of decisionValue(). depth is the number of pieces still to
+     * be placed, at least 1.
+     */
+    protected double chanceValue(Board board, int depth, Search search) {
+        double sum = 0;
+        for (Piece[] rotations : ROTATIONS) {
+            sum += decisionValue(board, rotations, depth, search);
+        }
+        return sum / ROTATIONS.length;
+    }
+
+    /**
+     * The value of a board with the given piece to place: the lowest score
+     * over its placements, rated directly at depth 1 and by chanceValue()
+     * deeper down. Throws TIMEOUT once the deadline has passed.
+     */
+    protected double decisionValue(Board board, Piece[] rotations, int depth, Search search) {
+        if (System.nanoTime() > search.deadline) {
+            throw TIMEOUT;
+        }
+
+        double best = GAME_OVER;
+        for (Piece current : rotations) {
+            final int xBound = board.getWidth() - current.getWidth() + 1;
+            for (int x = 0; x < xBound; x++) {
+                int y = board.dropHeight(current, x);
+                if (!pushPlace(board, current, x, y, search.limitHeight)) {
+                    continue;
+                }
+
+                double score;
+                if (depth == 1) {
+                    score = rateBoard(board);
+                } else {
+                    score = chanceValue(board, depth - 1, search);
+                }
+                board.pop();
+                best = Math.min(best, score);
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,368 @@
+// MonteCarloBrain.java
+
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A Monte Carlo tree search brain. Where DefaultBrain only rates the board
+ * right after the current piece lands, this one also plays the pieces that
+ * may come after it: the next pieces are drawn uniformly, like
+ * JTetris.pickNextPiece() does, and played out a few moves deep with a cheap
+ * greedy policy, and each placement of the current piece is judged by the
+ * average outcome of those playouts.
+ * <p>
+ * The tree alternates decision nodes (a board and a piece to place, one edge
+ * per placement) and chance nodes (one child per possible next piece), and
+ * grows where the UCB rule sends the playouts. Playouts run on several
+ * worker threads at once; node statistics are atomic counters and new nodes
+ * are published with compare-and-set, so the threads never lock. Each
+ * worker replays the path from the root on its own scratch board, so the
+ * tree itself stores no boards. The workers come from a pool shared by all
+ * the instances, whose idle threads go away, so brains need no closing.
+ * <p>
+ * A search stops at its deadline or after a given number of playouts. The
+ * next pieces are drawn from generators seeded per worker and per move, so
+ * with one thread, a playout count and a deadline that doesn't come first,
+ * the moves only depend on the seed.
+ * <p>
+ * Boards are rated with a DefaultBrain's rateBoard() (lower is better), so
+ * subclassing DefaultBrain to tune the rating also tunes this brain.
+ */
+public class MonteCarloBrain implements AnytimeBrain {
+
+    private static final Piece[][] ROTATIONS;
+
+    static {
+        Piece[] pieces = Piece.getPieces();
+        ROTATIONS = new Piece[pieces.length][];
+        for (int i = 0; i < pieces.length; i++) {
+            ROTATIONS[i] = DefaultBrain.rotations(pieces[i]);
+        }
+    }
+
+    // scores are stored in the tree as fixed point longs
+    private static final double FIXED = 1000.0;
+
+    // added to the score of a playout that tops out
+    private static final double GAME_OVER = 10000.0;
+
+    // a placement needs this many visits before its chance node is expanded
+    private static final int EXPAND_VISITS = 4;
+
+    // counted against a placement while a playout through it is running,
+    // as if it topped out, and taken back when its real score is known
+    private static final long VIRTUAL_LOSS = (long) (GAME_OVER * FIXED);
+
+    // shared by all the instances, see the class comment
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> {
+        Thread worker = new Thread(r, "tetris-mcts");
+        worker.setDaemon(true);
+        return worker;
+    });
+
+    private final DefaultBrain evaluator;
+    private final int threads;
+    private final long budgetNanos;
+    private final int horizon;
+    private final double exploration;
+    private final long playouts;
+    private final long seed;
+    private final AtomicLong moves = new AtomicLong();
+
+    /**
+     * Creates a brain that thinks for 50ms per move on every core, looking
+     * 3 pieces ahead.
+     */
+    public MonteCarloBrain() {
+        this(new DefaultBrain(), Runtime.getRuntime().availableProcessors(), 50, 3, 20.0);
+    }
+
+    /**
+     * Creates a brain rating boards with the given evaluator, running
+     * playouts on the given number of threads for budgetMillis per move.
+     * horizon is how many pieces each playout places, counting the current
+     * one, and exploration is the UCB constant, in rateBoard() units.
+     */
+    public MonteCarloBrain(DefaultBrain evaluator, int threads, long budgetMillis, int horizon, double exploration) {
+        this(evaluator, threads, budgetMillis, horizon, exploration, Long.MAX_VALUE, System.nanoTime());
+    }
+
+    /**
+     * Same as above, also stopping each search after the given number of
+     * playouts, and drawing pieces from generators derived from the seed.
+     */
+    public MonteCarloBrain(DefaultBrain evaluator, int threads, long budgetMillis, int horizon, double exploration,
+                           long playouts, long seed) {
+        this.evaluator = evaluator;
+        this.threads = threads;
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.horizon = horizon;
+        this.exploration = exploration;
+        this.playouts = playouts;
+        this.seed = seed;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight) {
+        return search(board, piece, limitHeight, System.nanoTime() + this.budgetNanos);
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, long deadline) {
+        return search(board, piece, limitHeight, deadline);
+    }
+
+    /**
+     * Runs playouts until the deadline (a System.nanoTime() value) or the
+     * playout count, and returns the most visited placement, or null if the
+     * piece cannot be played.
+     */
+    protected Brain.Move search(final Board board, Piece piece, final int limitHeight, final long deadline) {
+        Board start = new Board(board.getWidth(), board.getHeight());
+        start.copyFrom(board);
+
+        final Node root = new Node(start, DefaultBrain.rotations(piece), limitHeight);
+        if (root.size() == 0) {
+            return null;
+        }
+
+        final AtomicLong started = new AtomicLong();
+        final long move = this.moves.getAndIncrement();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < this.threads; t++) {
+            final SplittableRandom random = new SplittableRandom(this.seed + move * 0x9E3779B97F4A7C15L + t);
+            tasks.add(WORKERS.submit(() -> {
+                Board scratch = new Board(board.getWidth(), board.getHeight());
+                do {
+                    scratch.copyFrom(board);
+                    playout(root, scratch, limitHeight, random);
+                } while (System.nanoTime() < deadline && started.incrementAndGet() < this.playouts);
+            }));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // the most visited placement is the most robust choice, but it
+        // means little until every placement has had a playout
+        int best = 0;
+        for (int i = 0; i < root.size(); i++) {
+            if (root.visits.get(i) == 0) {
+                return this.evaluator.bestMove(board, piece, limitHeight);
+            }
+            if (root.visits.get(i) > root.visits.get(best)) {
+                best = i;
+            }
+        }
+
+        Brain.Move result = new Brain.Move();
+        result.piece = root.pieces[best];
+        result.x = root.xs[best];
+        result.y = board.dropHeight(result.piece, result.x);
+        result.score = root.mean(best);
+        return result;
+    }
+
+    /*
+     * One playout: walks down the tree choosing placements by UCB and next
+     * pieces at random, then finishes with greedy moves up to the horizon,
+     * and adds the final score to every placement on the path. Visits are
+     * counted on the way down together with a virtual loss, which makes the
+     * placements being explored right now look bad and so steers the other
+     * threads away from them until the real score replaces it.
+     */
+    private void playout(Node root, Board board, int limitHeight, SplittableRandom random) {
+        Node[] path = new Node[this.horizon];
+        int[] edges = new int[this.horizon];
+        int depth = 0;
+        boolean dead = false;
+
+        Node node = root;
+        while (node != null && depth < this.horizon) {
+            int edge = node.select(this.exploration);
+            node.totals.addAndGet(edge, VIRTUAL_LOSS);
+            node.visits.incrementAndGet(edge);
+            path[depth] = node;
+            edges[depth] = edge;
+            depth++;
+
+            if (!drop(board, node.pieces[edge], node.xs[edge], limitHeight)) {
+                dead = true;
+                break;
+            }
+            if (depth == this.horizon) {
+                break;
+            }
+
+            int next = random.nextInt(ROTATIONS.length);
+            node = node.child(edge, next, board, limitHeight);
+        }
+
+        // the rest of the way with the greedy policy
+        for (int d = depth; d < this.horizon && !dead; d++) {
+            Piece[] rotations = ROTATIONS[random.nextInt(ROTATIONS.length)];
+            dead = !greedy(board, rotations, limitHeight);
+        }
+
+        double score = this.evaluator.rateBoard(board) + (dead ? GAME_OVER : 0);
+        long fixed = (long) (score * FIXED);
+        for (int d = 0; d < depth; d++) {
+            path[d].totals.addAndGet(edges[d], fixed - VIRTUAL_LOSS);
+        }
+    }
+
+    // places the piece where the evaluator likes it best; false if it can't
+    private boolean greedy(Board board, Piece[] rotations, int limitHeight) {
+        double bestScore = Double.MAX_VALUE;
+        Piece bestPiece = null;
+        int bestX = 0;
+
+        for (Piece current : rotations) {
+            final int xBound = board.getWidth() - current.getWidth() + 1;
+            for (int x = 0; x < xBound; x++) {
+                int y = board.dropHeight(current, x);
+                if (!DefaultBrain.fits(current, y, limitHeight)) {
+                    continue;
+                }
+                if (board.place(current, x, y) <= Board.PLACE_ROW_FILLED) {
+                    board.clearRows();
+                    double score = this.evaluator.rateBoard(board);
+                    if (score < bestScore) {
+                        bestScore = score;
+                        bestPiece = current;
+                        bestX = x;
+                    }
+                }
+                board.undo();
+            }
+        }
+
+        return bestPiece != null && drop(board, bestPiece, bestX, limitHeight);
+    }
+
+    /*
+     * Drops the piece at x, clears rows and commits; false on a top out:
+     * a placement DefaultBrain.fits() rejects, or a stack left above the
+     * limit once the rows are cleared, which ends a game.
+     */
+    private static boolean drop(Board board, Piece piece, int x, int limitHeight) {
+        int y = board.dropHeight(piece, x);
+        if (!DefaultBrain.fits(piece, y, limitHeight) || board.place(piece, x, y) > Board.PLACE_ROW_FILLED) {
+            board.undo();
+            return false;
+        }
+        board.clearRows();
+        board.commit();
+        return board.getMaxHeight() <= limitHeight;
+    }
+
+    /*
+     * A decision node: the placements of one piece on one board, each with
+     * its visit count and score total, and the chance node below each one
+     * (an array of decision nodes indexed by the next piece), created when
+     * first needed.
+     */
+    private static class Node {
+        final Piece[] pieces;
+        final int[] xs;
+        final AtomicLongArray visits;
+        final AtomicLongArray totals;
+        final AtomicReferenceArray<AtomicReferenceArray<Node>> chance;
+
+        Node(Board board, Piece[] rotations, int limitHeight) {
+            List<Piece> pieces = new ArrayList<>();
+            List<Integer> xs = new ArrayList<>();
+            for (Piece current : rotations) {
+                final int xBound = board.getWidth() - current.getWidth() + 1;
+                for (int x = 0; x < xBound; x++) {
+                    if (DefaultBrain.fits(current, board.dropHeight(current, x), limitHeight)) {
+                        pieces.add(current);
+                        xs.add(x);
+                    }
+                }
+            }
+
+            this.pieces = pieces.toArray(new Piece[0]);
+            this.xs = xs.stream().mapToInt(Integer::intValue).toArray();
+            this.visits = new AtomicLongArray(this.xs.length);
+            this.totals = new AtomicLongArray(this.xs.length);
+            this.chance = new AtomicReferenceArray<>(this.xs.length);
+        }
+
+        int size() {
+            return this.xs.length;
+        }
+
+        double mean(int edge) {
+            long n = this.visits.get(edge);
+            return (n == 0) ? 0.0 : this.totals.get(edge) / (FIXED * n);
+        }
+
+        /*
+         * UCB1 for a minimized score: unvisited placements first, then the
+         * lowest mean minus the exploration bonus.
+         */
+        int select(double exploration) {
+            long total = 0;
+            for (int i = 0; i < size(); i++) {
+                long n = this.visits.get(i);
+                if (n == 0) {
+                    return i;
+                }
+                total += n;
+            }
+
+            double logTotal = Math.log(total);
+            int best = 0;
+            double bestValue = Double.MAX_VALUE;
+            for (int i = 0; i < size(); i++) {
+                long n = this.visits.get(i);
+                double value = mean(i) - exploration * Math.sqrt(logTotal / n);
+                if (value < bestValue) {
+                    bestValue = value;
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        /*
+         * Returns the decision node for the given next piece after the given
+         * placement, creating it (for the board as it is now) once the
+         * placement has been visited enough, or null if it is too early.
+         */
+        Node child(int edge, int next, Board board, int limitHeight) {
+            if (this.visits.get(edge) < EXPAND_VISITS) {
+                return null;
+            }
+
+            AtomicReferenceArray<Node> children = this.chance.get(edge);
+            if (children == null) {
+                this.chance.compareAndSet(edge, null, new AtomicReferenceArray<>(ROTATIONS.length));
+                children = this.chance.get(edge);
+            }
+
+            Node child = children.get(next);
+            if (child == null) {
+                Node created = new Node(board, ROTATIONS[next], limitHeight);
+                if (created.size() == 0) {
+                    return null;
+                }
+                children.compareAndSet(next, null, created);
+                child = children.get(next);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MonteCarloBrainTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private static void assertLegal(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        assertNotNull(move);
+        assertTrue(HeadlessGame.rotationIndex(piece, move.piece) >= 0);
+        assertTrue(move.x >= 0 && move.x + move.piece.getWidth() <= board.getWidth());
+        assertEquals(board.dropHeight(move.piece, move.x), move.y);
+        assertTrue(DefaultBrain.fits(move.piece, move.y, limitHeight));
+    }
+
+    @Test
+    public void testLegalMove() {
+        MonteCarloBrain brain = new MonteCarloBrain(new DefaultBrain(), 2, 10, 3, 20.0);
+        Piece[] pieces = Piece.getPieces();
+        int i = 0;
+        for (Board board : Benchmark.sampleBoards(10, 10, 24, 2)) {
+            Piece piece = pieces[i++ % pieces.length];
+            assertLegal(board, piece, 20, brain.bestMove(board, piece, 20));
+        }
+    }
+
+    // score of a 200 piece game on a narrow board, where looking ahead
+    // pays off quickly
+    private static int play(Brain brain, long seed) {
+        HeadlessGame game = new HeadlessGame(6, 16, seed);
+        while (game.isGameOn() && game.getCount() < 200) {
+            game.playWith(brain);
+        }
+        return game.getScore();
+    }
+
+    // one thread and a playout count: the same moves on every run
+    private static Brain seeded() {
+        return new MonteCarloBrain(new DefaultBrain(), 1, 60000, 3, 20.0, 300, 1);
+    }
+
+    @Test
+    public void testMatchesDefaultBrain() {
+        int defaultScore = 0;
+        int monteCarloScore = 0;
+        for (long seed = 1; seed <= 3; seed++) {
+            defaultScore += play(new DefaultBrain(), seed);
+            monteCarloScore += play(seeded(), seed);
+        }
+        assertTrue(monteCarloScore >= defaultScore);
+    }
+
+    @Test
+    public void testSeeded() {
+        assertEquals(play(seeded(), 2), play(seeded(), 2));
+    }
+
+    @Test
+    public void testDeadline() {
+        // a budget far longer than the test, overridden by the deadline
+        MonteCarloBrain brain = new MonteCarloBrain(new DefaultBrain(), 2, 60000, 3, 20.0);
+        Board board = Benchmark.sampleBoards(1, 10, 24, 4).get(0);
+        Piece piece = Piece.getPieces()[3];
+
+        long start = System.nanoTime();
+        Brain.Move move = brain.bestMove(board, piece, 20, start + 20000000L);
+        assertTrue(System.nanoTime() - start < SECOND);
+        assertLegal(board, piece, 20, move);
+
+        // already past: a few playouts at most, then a legal answer anyway
+        start = System.nanoTime();
+        move = brain.bestMove(board, piece, 20, start);
+        assertTrue(System.nanoTime() - start < SECOND);
+        assertLegal(board, piece, 20, move);
+    }
+}
@@ -0,0 +1,172 @@
+// MoveGenerator.java
+
+package tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds every placement a piece can actually reach from its starting
+ * position, using the same verbs as JTetris.tick(): LEFT, RIGHT, ROTATE,
+ * DROP and DOWN. Unlike the straight drops DefaultBrain tries, this includes
+ * placements that need a move after the piece has started falling, such as
+ * sliding under an overhang or rotating into a notch.
+ * <p>
+ * The search is a breadth-first search over (rotation, x, y) states. Visited
+ * states are kept in a bitset, collisions are checked with
+ * Board.canPlace(), which leaves the board alone, and every resting
+ * placement is returned with the shortest list of verbs that gets there.
+ * <p>
+ * The search arrays are kept between calls and only reallocated when the
+ * board size changes, so a generator should not be shared between threads.
+ */
+public class MoveGenerator {
+
+    /**
+     * A reachable resting placement: the Brain.Move fields say where the
+     * piece comes to rest (score is left at 0), path holds the JTetris verbs
+     * that bring it there from the starting position, ending with the DOWN
+     * that lands it.
+     */
+    public static class Placement extends Brain.Move {
+        public byte[] path;
+    }
+
+    private static final int[] VERBS = {JTetris.LEFT, JTetris.RIGHT, JTetris.ROTATE, JTetris.DROP, JTetris.DOWN};
+
+    private int width;
+    private int height;
+
+    private long[] visited;
+    private int[] queue;
+    private int[] parent;
+    private byte[] verb;
+
+    private void ensureCapacity(int width, int height) {
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+
+        // up to 4 rotations per piece
+        int states = 4 * width * height;
+        this.visited = new long[(states + 63) / 64];
+        this.queue = new int[states];
+        this.parent = new int[states];
+        this.verb = new byte[states];
+    }
+
+    private int index(int rotation, int x, int y) {
+        return (rotation * this.height + y) * this.width + x;
+    }
+
+    private boolean visit(int state) {
+        long bit = 1L << state;
+        if ((this.visited[state >>> 6] & bit) != 0) {
+            return false;
+        }
+        this.visited[state >>> 6] |= bit;
+        return true;
+    }
+
+    /**
+     * Returns every resting placement reachable by the given piece, starting
+     * where JTetris.addNewPiece() puts it. The board should be committed and
+     * must not contain the piece itself. Returns an empty list if the piece
+     * cannot even be added.
+     */
+    public List<Placement> generate(Board board, Piece piece) {
+        ensureCapacity(board.getWidth(), board.getHeight());
+        Arrays.fill(this.visited, 0);
+
+        Piece[] rotations = DefaultBrain.rotations(piece);
+        List<Placement> placements = new ArrayList<>();
+
+        int startX = (board.getWidth() - piece.getWidth()) / 2;
+        int startY = board.getHeight() - piece.getHeight();
+        if (!board.canPlace(piece, startX, startY)) {
+            return placements;
+        }
+
+        int head = 0;
+        int tail = 0;
+        int start = index(0, startX, startY);
+        visit(start);
+        this.parent[start] = -1;
+        this.queue[tail++] = start;
+
+        while (head < tail) {
+            int state = this.queue[head++];
+            int x = state % this.width;
+            int y = (state / this.width) % this.height;
+            int r = state / (this.width * this.height);
+            Piece current = rotations[r];
+
+            for (int v : VERBS) {
+                int nr = r;
+                int nx = x;
+                int ny = y;
+
+                // same moves as JTetris.computeNewPosition()
+                switch (v) {
+                    case JTetris.LEFT:
+                        nx--;
+                        break;
+                    case JTetris.RIGHT:
+                        nx++;
+                        break;
+                    case JTetris.ROTATE:
+                        nr = (r + 1) % rotations.length;
+                        nx = x + (current.getWidth() - rotations[nr].getWidth()) / 2;
+                        ny = y + (current.getHeight() - rotations[nr].getHeight()) / 2;
+                        break;
+                    case JTetris.DROP:
+                        ny = Math.min(board.dropHeight(current, x), y);
+                        break;
+                    default:
+                        ny--;
+                }
+
+                if (!board.canPlace(rotations[nr], nx, ny)) {
+                    if (v == JTetris.DOWN) {
+                        // blocked going down: the piece lands here
+                        placements.add(placement(current, x, y, state));
+                    }
+                    continue;
+                }
+
+                int next = index(nr, nx, ny);
+                if (visit(next)) {
+                    this.parent[next] = state;
+                    this.verb[next] = (byte) v;
+                    this.queue[tail++] = next;
+                }
+            }
+        }
+
+        return placements;
+    }
+
+    // builds the placement, walking the parent links back to the start
+    private Placement placement(Piece piece, int x, int y, int state) {
+        int length = 1;
+        for (int s = state; this.parent[s] >= 0; s = this.parent[s]) {
+            length++;
+        }
+
+        byte[] path = new byte[length];
+        path[--length] = JTetris.DOWN;
+        for (int s = state; this.parent[s] >= 0; s = this.parent[s]) {
+            path[--length] = this.verb[s];
+        }
+
+        Placement placement = new Placement();
+        placement.piece = piece;
+        placement.x = x;
+        placement.y = y;
+        placement.path = path;
+        return placement;
+    }
+}
@@ -0,0 +1,84 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MoveGeneratorTest {
+
+    @Test
+    public void testEmptyBoardMatchesDrops() {
+        // on an empty board the reachable placements are exactly the drops
+        Board b = new Board(10, 24);
+        MoveGenerator generator = new MoveGenerator();
+
+        List<MoveGenerator.Placement> placements = generator.generate(b, new Piece(Piece.L1_STR));
+        assertEquals(9 + 8 + 9 + 8, placements.size());
+        for (MoveGenerator.Placement p : placements) {
+            assertEquals(b.dropHeight(p.piece, p.x), p.y);
+        }
+
+        assertEquals(9, generator.generate(b, new Piece(Piece.SQUARE_STR)).size());
+        assertEquals(7 + 10, generator.generate(b, new Piece(Piece.STICK_STR)).size());
+    }
+
+    @Test
+    public void testSlideUnderOverhang() {
+        Board b = new Board(4, 8);
+        Piece square = new Piece(Piece.SQUARE_STR);
+
+        // a ledge over columns 2 and 3, two rows up
+        b.place(new Piece("0 0 1 0"), 2, 2);
+        b.commit();
+
+        List<MoveGenerator.Placement> placements = new MoveGenerator().generate(b, square);
+
+        MoveGenerator.Placement tucked = null;
+        for (MoveGenerator.Placement p : placements) {
+            assertTrue(b.canPlace(p.piece, p.x, p.y));
+            assertFalse(b.canPlace(p.piece, p.x, p.y - 1));
+            if (p.x == 2 && p.y == 0) {
+                tucked = p;
+            }
+        }
+        assertNotNull(tucked);
+        assertEquals(3, b.dropHeight(square, 2));
+
+        // replay the path: it must end in the tucked position
+        int x = 1;
+        int y = 6;
+        for (byte verb : tucked.path) {
+            switch (verb) {
+                case JTetris.LEFT:
+                    x--;
+                    break;
+                case JTetris.RIGHT:
+                    x++;
+                    break;
+                case JTetris.DROP:
+                    y = Math.min(b.dropHeight(square, x), y);
+                    break;
+                case JTetris.DOWN:
+                    if (b.canPlace(square, x, y - 1)) {
+                        y--;
+                    }
+                    break;
+                default:
+                    fail("no rotation needed");
+            }
+            assertTrue(b.canPlace(square, x, y));
+        }
+        assertEquals(2, x);
+        assertEquals(0, y);
+    }
+
+    @Test
+    public void testBlockedStart() {
+        Board b = new Board(4, 4);
+        b.place(new Piece(Piece.STICK_STR), 1, 0);
+        b.commit();
+        assertTrue(new MoveGenerator().generate(b, new Piece(Piece.SQUARE_STR)).isEmpty());
+    }
+}
@@ -0,0 +1,346 @@
+// PerfectClearSolver.java
+
+package tetris;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Looks for a perfect clear: a sequence of placements of known upcoming
+ * pieces, each dropped straight down as brains play them, after which the
+ * board is empty. Only the bottom MAX_ROWS rows are used -- no piece may
+ * stick out above them -- which is where perfect clears are found in
+ * practice and what keeps the search small.
+ * <p>
+ * The search works on a bitboard: the bottom rows of the board packed in a
+ * single long, row y at bits y * width, so placing a piece, testing a row
+ * and clearing it are a few shifts and masks. For each number of rows to
+ * clear (from the stack's height up to MAX_ROWS) it is a depth first
+ * search, pruned by:
+ * <ul>
+ * <li>cell counts: the empty cells must be a multiple of 4, and as many as
+ * the pieces left can fill;</li>
+ * <li>walls: the columns already full across all the rows split the board
+ * in parts no piece can cross, and each part must be fillable on its own,
+ * i.e. have a multiple of 4 empty cells;</li>
+ * <li>dead states: every (bitboard, rows, pieces used) found to lead
+ * nowhere is remembered and not searched again -- many move orders give
+ * the same state.</li>
+ * </ul>
+ * The placements of the first piece are searched in parallel on the common
+ * fork/join pool. When several of them lead to a perfect clear, the first
+ * one in search order wins, so answers don't depend on thread timing.
+ * <p>
+ * solve() gives up at a deadline, so a brain can call it opportunistically
+ * from its tick. Boards wider than MAX_WIDTH are not supported.
+ */
+public class PerfectClearSolver {
+
+    public static final int MAX_ROWS = 4;
+    public static final int MAX_WIDTH = 12;
+
+    // the deadline is looked at every this many nodes
+    private static final int CLOCK_NODES = 64;
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /**
+     * Returns moves for pieces[0], pieces[1], ... in order -- each one to be
+     * placed at its x and y and followed by clearRows() -- that empty the
+     * board, using as few of the pieces as possible. Returns an empty array
+     * if the board is already empty, and null if there is no perfect clear
+     * within the bottom rows with these pieces, the board is not supported,
+     * or the deadline (a System.nanoTime() value) passed first.
+     */
+    public Brain.Move[] solve(Board board, Piece[] pieces, long deadline) {
+        final int width = board.getWidth();
+        final int maxHeight = board.getMaxHeight();
+        if (width > MAX_WIDTH || !board.isPacked() || maxHeight > MAX_ROWS) {
+            return null;
+        }
+        if (maxHeight == 0) {
+            return new Brain.Move[0];
+        }
+
+        long state = 0;
+        for (int y = 0; y < maxHeight; y++) {
+            state |= board.getRowBits(y) << (y * width);
+        }
+
+        Piece[][] rotations = new Piece[pieces.length][];
+        long[][] masks = new long[pieces.length][];
+        for (int i = 0; i < pieces.length; i++) {
+            rotations[i] = DefaultBrain.rotations(pieces[i]);
+            masks[i] = new long[rotations[i].length];
+            for (int r = 0; r < rotations[i].length; r++) {
+                for (TPoint point : rotations[i][r].getBody()) {
+                    masks[i][r] |= 1L << (point.y * width + point.x);
+                }
+            }
+        }
+
+        for (int rows = maxHeight; rows <= MAX_ROWS; rows++) {
+            int empty = rows * width - Long.bitCount(state);
+            if (empty % 4 != 0 || empty / 4 > pieces.length) {
+                continue;
+            }
+            Brain.Move[] moves = solve(new Search(width, rotations, masks, empty / 4, deadline), state, rows);
+            if (moves != null || System.nanoTime() >= deadline) {
+                return moves;
+            }
+        }
+        return null;
+    }
+
+    // searches the placements of the first piece in parallel
+    private Brain.Move[] solve(final Search root, final long state, final int rows) {
+        final int[] first = root.placements(state, rows, 0);
+        final int count = first.length / 2;
+        final int[][] found = new int[count][];
+        final AtomicInteger best = new AtomicInteger(NONE);
+
+        IntStream.range(0, count).parallel().forEach(i -> {
+            Search search = root.fork(best, i);
+            int[] path = search.run(state, rows, first[2 * i], first[2 * i + 1]);
+            if (path != null) {
+                found[i] = path;
+                best.accumulateAndGet(i, Math::min);
+            }
+        });
+
+        int winner = best.get();
+        return (winner == NONE) ? null : root.moves(found[winner]);
+    }
+
+    /*
+     * One depth first search, from one placement of the first piece. Keeps
+     * its own dead-state set and scratch arrays, so the parallel searches
+     * share nothing but the winner's index.
+     */
+    private static final class Search {
+        private final int width;
+        private final Piece[][] rotations;
+        private final long[][] masks;
+        private final int depth; // pieces in a perfect clear
+        private final long deadline;
+
+        private AtomicInteger best;
+        private int index;
+
+        private final int[][] heights; // column heights, per piece
+        private final int[] path; // rotation, x, y per piece
+        private long[] dead = new long[1024];
+        private int deadCount;
+        private int nodes;
+        private boolean stopped;
+
+        Search(int width, Piece[][] rotations, long[][] masks, int depth, long deadline) {
+            this.width = width;
+            this.rotations = rotations;
+            this.masks = masks;
+            this.depth = depth;
+            this.deadline = deadline;
+            this.heights = new int[depth][width];
+            this.path = new int[3 * depth];
+        }
+
+        Search fork(AtomicInteger best, int index) {
+            Search search = new Search(this.width, this.rotations, this.masks, this.depth, this.deadline);
+            search.best = best;
+            search.index = index;
+            return search;
+        }
+
+        /*
+         * Returns the (rotation, x) pairs of all the legal placements of the
+         * n-th piece on the state, flattened.
+         */
+        int[] placements(long state, int rows, int n) {
+            int[] result = new int[2 * this.rotations[n].length * this.width];
+            int count = 0;
+            int[] heights = columnHeights(state, rows, n);
+            for (int r = 0; r < this.rotations[n].length; r++) {
+                Piece piece = this.rotations[n][r];
+                for (int x = 0; x + piece.getWidth() <= this.width; x++) {
+                    if (dropY(piece, x, heights) + piece.getHeight() <= rows) {
+                        result[count++] = r;
+                        result[count++] = x;
+                    }
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        // returns the path to a perfect clear starting with the given move
+        int[] run(long state, int rows, int rotation, int x) {
+            int y = dropY(this.rotations[0][rotation], x, columnHeights(state, rows, 0));
+            if (place(state, rows, 0, rotation, x, y)) {
+                return this.path;
+            }
+            return null;
+        }
+
+        // places the n-th piece and searches on from there
+        private boolean place(long state, int rows, int n, int rotation, int x, int y) {
+            state |= this.masks[n][rotation] << (y * this.width + x);
+            this.path[3 * n] = rotation;
+            this.path[3 * n + 1] = x;
+            this.path[3 * n + 2] = y;
+
+            // clear the full rows, top down
+            final long full = (1L << this.width) - 1;
+            for (int row = rows - 1; row >= 0; row--) {
+                int shift = row * this.width;
+                if (((state >>> shift) & full) == full) {
+                    long below = state & ((1L << shift) - 1);
+                    state = below | ((state >>> (shift + this.width)) << shift);
+                    rows--;
+                }
+            }
+
+            if (state == 0) {
+                return true;
+            }
+            return search(state, rows, n + 1);
+        }
+
+        // tries every placement of the n-th piece on the state
+        private boolean search(long state, int rows, int n) {
+            if (n >= this.depth || rows == 0 || !fillable(state, rows)) {
+                return false;
+            }
+            long key = state | ((long) n << 48) | ((long) rows << 58);
+            if (isDead(key) || tooLate()) {
+                return false;
+            }
+
+            final int[] heights = columnHeights(state, rows, n);
+            for (int r = 0; r < this.rotations[n].length; r++) {
+                Piece piece = this.rotations[n][r];
+                for (int x = 0; x + piece.getWidth() <= this.width; x++) {
+                    int y = dropY(piece, x, heights);
+                    if (y + piece.getHeight() > rows) {
+                        continue;
+                    }
+                    if (place(state, rows, n, r, x, y)) {
+                        return true;
+                    }
+                    if (this.stopped) {
+                        return false;
+                    }
+                }
+            }
+            addDead(key);
+            return false;
+        }
+
+        // stops at the deadline, or when an earlier placement of the first
+        // piece has already found a perfect clear
+        private boolean tooLate() {
+            if (this.nodes++ % CLOCK_NODES == 0) {
+                this.stopped = System.nanoTime() >= this.deadline || this.best.get() < this.index;
+            }
+            return this.stopped;
+        }
+
+        // the wall and cell count rule, see the class comment
+        private boolean fillable(long state, int rows) {
+            int part = 0;
+            for (int x = 0; x < this.width; x++) {
+                int filled = 0;
+                for (int y = 0; y < rows; y++) {
+                    if ((state & (1L << (y * this.width + x))) != 0) {
+                        filled++;
+                    }
+                }
+                if (filled == rows) {
+                    if (part % 4 != 0) {
+                        return false;
+                    }
+                    part = 0;
+                } else {
+                    part += rows - filled;
+                }
+            }
+            return part % 4 == 0;
+        }
+
+        // computes the column heights of the state into the n-th array
+        private int[] columnHeights(long state, int rows, int n) {
+            final int[] heights = this.heights[n];
+            for (int x = 0; x < this.width; x++) {
+                int height = 0;
+                for (int y = rows - 1; y >= 0; y--) {
+                    if ((state & (1L << (y * this.width + x))) != 0) {
+                        height = y + 1;
+                        break;
+                    }
+                }
+                heights[x] = height;
+            }
+            return heights;
+        }
+
+        // same as Board.dropHeight()
+        private static int dropY(Piece piece, int x, int[] heights) {
+            int[] skirt = piece.getSkirtArray();
+            int y = 0;
+            for (int i = 0; i < skirt.length; i++) {
+                y = Math.max(y, heights[x + i] - skirt[i]);
+            }
+            return y;
+        }
+
+        /*
+         * The dead states, in an open addressing set of longs (keys are
+         * never 0, since rows is at least 1).
+         */
+        private boolean isDead(long key) {
+            int mask = this.dead.length - 1;
+            for (int i = hash(key) & mask; this.dead[i] != 0; i = (i + 1) & mask) {
+                if (this.dead[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void addDead(long key) {
+            if (2 * (this.deadCount + 1) > this.dead.length) {
+                long[] old = this.dead;
+                this.dead = new long[2 * old.length];
+                this.deadCount = 0;
+                for (long k : old) {
+                    if (k != 0) {
+                        addDead(k);
+                    }
+                }
+            }
+            int mask = this.dead.length - 1;
+            int i = hash(key) & mask;
+            while (this.dead[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            this.dead[i] = key;
+            this.deadCount++;
+        }
+
+        private static int hash(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+
+        // turns a path into moves
+        Brain.Move[] moves(int[] path) {
+            Brain.Move[] moves = new Brain.Move[this.depth];
+            for (int n = 0; n < this.depth; n++) {
+                moves[n] = new Brain.Move();
+                moves[n].piece = this.rotations[n][path[3 * n]];
+                moves[n].x = path[3 * n + 1];
+                moves[n].y = path[3 * n + 2];
+            }
+            return moves;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PerfectClearSolverTest {
+
+    private static final long SECOND = 1000000000L;
+
+    // plays the moves and checks that they are legal drops and empty the board
+    private static void assertClears(Board board, Brain.Move[] moves, Piece[] pieces) {
+        Board copy = new Board(board);
+        for (int i = 0; i < moves.length; i++) {
+            Brain.Move move = moves[i];
+            assertTrue(HeadlessGame.rotationIndex(pieces[i], move.piece) >= 0);
+            assertEquals(copy.dropHeight(move.piece, move.x), move.y);
+            assertTrue(move.y + move.piece.getHeight() <= PerfectClearSolver.MAX_ROWS);
+            assertTrue(copy.place(move.piece, move.x, move.y) <= Board.PLACE_ROW_FILLED);
+            copy.clearRows();
+            copy.commit();
+        }
+        assertEquals(0, copy.getMaxHeight());
+    }
+
+    @Test
+    public void testEmpty() {
+        Brain.Move[] moves = new PerfectClearSolver().solve(new Board(10, 24), Piece.getPieces(),
+                System.nanoTime() + SECOND);
+        assertEquals(0, moves.length);
+    }
+
+    @Test
+    public void testSticks() {
+        Board board = new Board(10, 24);
+        Piece square = new Piece(Piece.SQUARE_STR);
+        for (int x = 4; x < 10; x += 2) {
+            board.place(square, x, 0);
+            board.commit();
+        }
+        Piece[] pieces = {new Piece(Piece.STICK_STR), new Piece(Piece.STICK_STR)};
+        Brain.Move[] moves = new PerfectClearSolver().solve(board, pieces, System.nanoTime() + SECOND);
+        assertEquals(2, moves.length);
+        for (Brain.Move move : moves) {
+            assertEquals(0, move.x);
+            assertEquals(0, move.y);
+            assertEquals(4, move.piece.getWidth());
+        }
+        assertClears(board, moves, pieces);
+
+        // one piece can't fill the two rows
+        assertNull(new PerfectClearSolver().solve(board, new Piece[]{square}, System.nanoTime() + SECOND));
+    }
+
+    // fewest pieces of the sequence that clear the board, by trying everything
+    private static int bruteForce(Board board, Piece[] pieces, int n) {
+        if (board.getMaxHeight() == 0) {
+            return n;
+        }
+        if (n == pieces.length) {
+            return -1;
+        }
+        int best = -1;
+        for (Piece piece : DefaultBrain.rotations(pieces[n])) {
+            for (int x = 0; x + piece.getWidth() <= board.getWidth(); x++) {
+                int y = board.dropHeight(piece, x);
+                if (y + piece.getHeight() > PerfectClearSolver.MAX_ROWS) {
+                    continue;
+                }
+                Board next = new Board(board);
+                next.place(piece, x, y);
+                next.clearRows();
+                next.commit();
+                int result = bruteForce(next, pieces, n + 1);
+                if (result >= 0 && (best < 0 || result < best)) {
+                    best = result;
+                }
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testAgainstBruteForce() {
+        Random random = new Random(11);
+        Piece[] all = Piece.getPieces();
+        int solved = 0;
+        for (int round = 0; round < 60; round++) {
+            // a few random drops on a narrow board make the starting stack
+            Board board = new Board(6, 12);
+            for (int i = random.nextInt(4); i > 0; i--) {
+                Piece piece = HeadlessGame.rotation(all[random.nextInt(all.length)], random.nextInt(4));
+                int x = random.nextInt(6 - piece.getWidth() + 1);
+                int y = board.dropHeight(piece, x);
+                if (y + piece.getHeight() <= 3) {
+                    board.place(piece, x, y);
+                    board.clearRows();
+                    board.commit();
+                }
+            }
+            Piece[] pieces = new Piece[4];
+            for (int i = 0; i < pieces.length; i++) {
+                pieces[i] = all[random.nextInt(all.length)];
+            }
+
+            int expected = bruteForce(board, pieces, 0);
+            Brain.Move[] moves = new PerfectClearSolver().solve(board, pieces, System.nanoTime() + 10 * SECOND);
+            if (expected < 0) {
+                assertNull(moves);
+            } else {
+                assertEquals(expected, moves.length);
+                assertClears(board, moves, pieces);
+                solved++;
+            }
+        }
+        assertTrue(solved > 5);
+    }
+
+    @Test
+    public void testUpcomingPieces() {
+        HeadlessGame game = new HeadlessGame(8);
+        Piece[] upcoming = game.getUpcomingPieces(6);
+        Brain brain = new DefaultBrain();
+        for (int i = 0; i < 6; i++) {
+            assertTrue(upcoming[i] == game.getCurrentPiece());
+            game.playWith(brain);
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        Board board = new Board(10, 24);
+        board.place(new Piece(Piece.PYRAMID_STR), 0, 0);
+        board.commit();
+        Piece[] pieces = new HeadlessGame(4).getUpcomingPieces(11);
+        long start = System.nanoTime();
+        Brain.Move[] moves = new PerfectClearSolver().solve(board, pieces, start + 2000000L);
+        assertTrue(System.nanoTime() - start < SECOND);
+        if (moves != null) {
+            assertClears(board, moves, pieces);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// PerformanceOverlay.java
+
+package tetris;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.BoxLayout;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+/**
+ * A small panel of live performance numbers for tuning brains: brain
+ * decision time (last and average over the refresh window), candidate
+ * placements rated per second, pieces per second, frame render time and the
+ * allocation rate of the game's ticks (GameMetrics.tickBytes), on whichever
+ * thread they run.
+ * <p>
+ * Everything is read from the GameMetrics counters the game keeps anyway,
+ * so nothing extra is measured on the hot path. The panel only polls them
+ * (on a Swing timer, REFRESH_MS apart) while it is started, which keeps its
+ * own cost to a few label updates per second.
+ */
+@SuppressWarnings("serial")
+public class PerformanceOverlay extends JPanel {
+
+    public static final int REFRESH_MS = 500;
+
+    private final GameMetrics metrics;
+    private final javax.swing.Timer timer;
+
+    private final JLabel brainLabel;
+    private final JLabel candidatesLabel;
+    private final JLabel piecesLabel;
+    private final JLabel frameLabel;
+    private final JLabel allocLabel;
+
+    // counter values at the previous refresh
+    private long lastTime;
+    private long lastBestMoves;
+    private long lastBestMoveNanos;
+    private long lastCandidates;
+    private long lastPieces;
+    private long lastPaints;
+    private long lastPaintNanos;
+    private long lastAllocated;
+
+    public PerformanceOverlay(GameMetrics metrics) {
+        this.metrics = metrics;
+
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        brainLabel = new JLabel(" ");
+        candidatesLabel = new JLabel(" ");
+        piecesLabel = new JLabel(" ");
+        frameLabel = new JLabel(" ");
+        allocLabel = new JLabel(" ");
+        add(brainLabel);
+        add(candidatesLabel);
+        add(piecesLabel);
+        add(frameLabel);
+        add(allocLabel);
+
+        timer = new javax.swing.Timer(REFRESH_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Starts polling the counters and shows the panel.
+     */
+    public void start() {
+        sample();
+        timer.start();
+        setVisible(true);
+    }
+
+    /**
+     * Stops polling and hides the panel.
+     */
+    public void stop() {
+        timer.stop();
+        setVisible(false);
+    }
+
+    // remembers the current counter values as the start of the next window
+    private void sample() {
+        lastTime = System.nanoTime();
+        lastBestMoves = metrics.bestMove.getCount();
+        lastBestMoveNanos = metrics.bestMove.getSumNanos();
+        lastCandidates = metrics.getCandidates();
+        lastPieces = metrics.getPieces();
+        lastPaints = metrics.paint.getCount();
+        lastPaintNanos = metrics.paint.getSumNanos();
+        lastAllocated = metrics.tickBytes.getBytes();
+    }
+
+    private void refresh() {
+        long now = System.nanoTime();
+        double seconds = (now - lastTime) / 1e9;
+
+        long moves = metrics.bestMove.getCount() - lastBestMoves;
+        long moveNanos = metrics.bestMove.getSumNanos() - lastBestMoveNanos;
+        long candidates = metrics.getCandidates() - lastCandidates;
+        long pieces = metrics.getPieces() - lastPieces;
+        long paints = metrics.paint.getCount() - lastPaints;
+        long paintNanos = metrics.paint.getSumNanos() - lastPaintNanos;
+        long allocated = metrics.tickBytes.getBytes() - lastAllocated;
+
+        brainLabel.setText(String.format("Brain %.2f / %.2f ms",
+                metrics.bestMove.getLastNanos() / 1e6, average(moveNanos, moves) / 1e6));
+        candidatesLabel.setText(String.format("Cand/s %.0f", candidates / seconds));
+        piecesLabel.setText(String.format("Pieces/s %.1f", pieces / seconds));
+        frameLabel.setText(String.format("Frame %.2f ms", average(paintNanos, paints) / 1e6));
+        allocLabel.setText(String.format("Alloc %.1f MB/s", allocated / seconds / (1024 * 1024)));
+
+        sample();
+    }
+
+    private static double average(long sum, long count) {
+        return (count == 0) ? 0.0 : ((double) sum) / count;
+    }
+}
@@ -0,0 +1,287 @@
+// PersistentBoard.java
+
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * An immutable tetris board for tree searches that keep many related boards
+ * alive at once. place() and clearRows() never change a board; they return
+ * a new one that shares everything it can with its parent.
+ * <p>
+ * Rows are stored packed, one long per row as in Board.getRowBits(), in
+ * chunks of CHUNK rows. A new board gets a new top-level array (a handful of
+ * references) and new copies of the chunks it actually changes; all other
+ * chunks are shared with the parent. Placing a piece therefore copies at
+ * most two chunks, and clearing rows copies the chunks from the lowest
+ * cleared row up to the top of the stack -- the empty rows above are all
+ * the one shared EMPTY chunk. The column heights (one int per column) are
+ * copied whenever they change.
+ * <p>
+ * Being immutable, boards can be shared freely between threads. Only
+ * boards up to Board.MAX_PACKED_WIDTH wide are supported.
+ */
+public final class PersistentBoard {
+
+    public static final int CHUNK = 4;
+
+    private static final long[] EMPTY = new long[CHUNK];
+
+    private final int width;
+    private final int height;
+    private final long[][] chunks;
+    private final int[] heights;
+
+    private PersistentBoard(int width, int height, long[][] chunks, int[] heights) {
+        this.width = width;
+        this.height = height;
+        this.chunks = chunks;
+        this.heights = heights;
+    }
+
+    /**
+     * Returns an empty board of the given size.
+     */
+    public static PersistentBoard empty(int width, int height) {
+        if (width > Board.MAX_PACKED_WIDTH) {
+            throw new IllegalArgumentException("Board too wide to pack");
+        }
+        long[][] chunks = new long[(height + CHUNK - 1) / CHUNK][];
+        Arrays.fill(chunks, EMPTY);
+        return new PersistentBoard(width, height, chunks, new int[width]);
+    }
+
+    /**
+     * Returns a persistent copy of the given (packed) board.
+     */
+    public static PersistentBoard of(Board board) {
+        PersistentBoard empty = empty(board.getWidth(), board.getHeight());
+        long[][] chunks = empty.chunks;
+        for (int y = 0; y < board.getMaxHeight(); y++) {
+            if (chunks[y / CHUNK] == EMPTY) {
+                chunks[y / CHUNK] = new long[CHUNK];
+            }
+            chunks[y / CHUNK][y % CHUNK] = board.getRowBits(y);
+        }
+
+        int[] heights = new int[board.getWidth()];
+        for (int x = 0; x < heights.length; x++) {
+            heights[x] = board.getColumnHeight(x);
+        }
+        return new PersistentBoard(board.getWidth(), board.getHeight(), chunks, heights);
+    }
+
+    /**
+     * Writes this board's contents into the given board of the same size,
+     * for code that only takes a Board (e.g. DefaultBrain.rateBoard()). The
+     * board is left committed.
+     */
+    public void copyTo(Board board) {
+        if (board.getWidth() != this.width || board.getHeight() != this.height) {
+            throw new IllegalArgumentException("Can only copy to a board of the same size");
+        }
+        for (int x = 0; x < this.width; x++) {
+            for (int y = 0; y < this.height; y++) {
+                board.grid[x][y] = getGrid(x, y);
+            }
+        }
+        board.updateWidthsHeights();
+        board.commit();
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public long getRowBits(int y) {
+        return this.chunks[y / CHUNK][y % CHUNK];
+    }
+
+    public boolean getGrid(int x, int y) {
+        return (getRowBits(y) & (1L << x)) != 0;
+    }
+
+    public int getRowWidth(int y) {
+        return Long.bitCount(getRowBits(y));
+    }
+
+    public int getColumnHeight(int x) {
+        return this.heights[x];
+    }
+
+    public int getMaxHeight() {
+        int max = 0;
+        for (int height : this.heights) {
+            max = Math.max(max, height);
+        }
+        return max;
+    }
+
+    /**
+     * Same as Board.dropHeight().
+     */
+    public int dropHeight(Piece piece, int x) {
+        int y = 0;
+        for (int i = 0; i < piece.getWidth(); i++) {
+            y = Math.max(y, this.heights[i + x] - piece.getSkirtArray()[i]);
+        }
+        return y;
+    }
+
+    /**
+     * Returns true if the piece fits at the given position: inside the
+     * board and not overlapping anything.
+     */
+    public boolean canPlace(Piece piece, int x, int y) {
+        if (x < 0 || y < 0 || x + piece.getWidth() > this.width || y + piece.getHeight() > this.height) {
+            return false;
+        }
+        for (TPoint point : piece.getBody()) {
+            if (getGrid(x + point.x, y + point.y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the board with the piece added at the given position, or null
+     * if it does not fit (the cases where Board.place() returns
+     * PLACE_OUT_BOUNDS or PLACE_BAD). Rows filled by the piece are left in
+     * place; see clearRows().
+     */
+    public PersistentBoard place(Piece piece, int x, int y) {
+        if (!canPlace(piece, x, y)) {
+            return null;
+        }
+
+        long[][] chunks = this.chunks.clone();
+        int[] heights = this.heights.clone();
+        for (TPoint point : piece.getBody()) {
+            int cx = x + point.x;
+            int cy = y + point.y;
+            int c = cy / CHUNK;
+            if (chunks[c] == this.chunks[c]) {
+                chunks[c] = this.chunks[c].clone(); // first write to this chunk
+            }
+            chunks[c][cy % CHUNK] |= 1L << cx;
+            heights[cx] = Math.max(heights[cx], cy + 1);
+        }
+        return new PersistentBoard(this.width, this.height, chunks, heights);
+    }
+
+    /**
+     * Returns true if some row is filled all the way across.
+     */
+    public boolean hasFullRows() {
+        final long full = (1L << this.width) - 1;
+        int top = getMaxHeight();
+        for (int y = 0; y < top; y++) {
+            if (getRowBits(y) == full) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the board with the full rows removed and the rows above moved
+     * down, or this board if there are none.
+     */
+    public PersistentBoard clearRows() {
+        final long full = (1L << this.width) - 1;
+        final int top = getMaxHeight();
+
+        int first = 0;
+        while (first < top && getRowBits(first) != full) {
+            first++;
+        }
+        if (first == top) {
+            return this;
+        }
+
+        long[][] chunks = this.chunks.clone();
+        int to = first;
+        for (int from = first; from < top; from++) {
+            long row = getRowBits(from);
+            if (row != full) {
+                setRow(chunks, to++, row);
+            }
+        }
+        for (int y = to; y < top; y++) {
+            setRow(chunks, y, 0);
+        }
+        // chunks left all empty go back to the shared one
+        for (int c = to / CHUNK; c < chunks.length; c++) {
+            if (chunks[c] != EMPTY && Arrays.equals(chunks[c], EMPTY)) {
+                chunks[c] = EMPTY;
+            }
+        }
+
+        // heights: first filled row from the top of each column
+        int[] heights = new int[this.width];
+        long seen = 0;
+        for (int y = to - 1; y >= 0 && seen != full; y--) {
+            long found = getRow(chunks, y) & ~seen;
+            seen |= found;
+            while (found != 0) {
+                heights[Long.numberOfTrailingZeros(found)] = y + 1;
+                found &= found - 1;
+            }
+        }
+        return new PersistentBoard(this.width, this.height, chunks, heights);
+    }
+
+    private static long getRow(long[][] chunks, int y) {
+        return chunks[y / CHUNK][y % CHUNK];
+    }
+
+    /*
+     * Writes a row into a chunk array that is being built: the chunk is
+     * copied first unless this board already did so.
+     */
+    private void setRow(long[][] chunks, int y, long row) {
+        int c = y / CHUNK;
+        if (chunks[c][y % CHUNK] == row) {
+            return;
+        }
+        if (chunks[c] == this.chunks[c]) {
+            chunks[c] = this.chunks[c].clone();
+        }
+        chunks[c][y % CHUNK] = row;
+    }
+
+    /**
+     * Returns how many of this board's row chunks are the very same objects
+     * as the other board's -- a measure of the sharing.
+     */
+    public int sharedChunks(PersistentBoard other) {
+        int shared = 0;
+        for (int c = 0; c < Math.min(this.chunks.length, other.chunks.length); c++) {
+            if (this.chunks[c] == other.chunks[c]) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    public String toString() {
+        StringBuilder buff = new StringBuilder();
+        for (int y = this.height - 1; y >= 0; y--) {
+            buff.append('|');
+            for (int x = 0; x < this.width; x++) {
+                buff.append(getGrid(x, y) ? '+' : ' ');
+            }
+            buff.append("|\n");
+        }
+        for (int x = 0; x < this.width + 2; x++) {
+            buff.append('-');
+        }
+        buff.append('\n');
+        return buff.toString();
+    }
+}
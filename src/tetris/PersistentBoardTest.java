@@ -0,0 +1,89 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PersistentBoardTest {
+
+    private static void assertSameBoard(Board expected, PersistentBoard actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            assertEquals(expected.getRowBits(y), actual.getRowBits(y));
+            assertEquals(expected.getRowWidth(y), actual.getRowWidth(y));
+        }
+        for (int x = 0; x < expected.getWidth(); x++) {
+            assertEquals(expected.getColumnHeight(x), actual.getColumnHeight(x));
+        }
+    }
+
+    @Test
+    public void testPlaceLeavesParentAlone() {
+        PersistentBoard empty = PersistentBoard.empty(6, 12);
+        PersistentBoard one = empty.place(new Piece(Piece.PYRAMID_STR), 0, 0);
+
+        assertEquals(0, empty.getMaxHeight());
+        assertFalse(empty.getGrid(1, 1));
+        assertEquals(2, one.getMaxHeight());
+        assertTrue(one.getGrid(1, 1));
+
+        // only the bottom chunk was copied
+        assertEquals(2, one.sharedChunks(empty));
+        assertNull(one.place(new Piece(Piece.SQUARE_STR), 1, 0));
+        assertNull(one.place(new Piece(Piece.SQUARE_STR), 5, 0));
+    }
+
+    @Test
+    public void testClearRows() {
+        PersistentBoard b = PersistentBoard.empty(4, 8)
+                .place(new Piece(Piece.STICK_STR).computeNextRotation(), 0, 0)
+                .place(new Piece(Piece.PYRAMID_STR), 0, 1);
+        assertTrue(b.hasFullRows());
+
+        PersistentBoard cleared = b.clearRows();
+        assertFalse(cleared.hasFullRows());
+        assertEquals(2, cleared.getMaxHeight());
+        assertEquals(3, cleared.getRowWidth(0));
+        assertEquals(1, cleared.getRowWidth(1));
+        assertEquals(4, b.getRowWidth(0));
+        assertSame(cleared, cleared.clearRows());
+    }
+
+    @Test
+    public void testMatchesBoard() {
+        // random drops, applied to both kinds of board
+        Random random = new Random(17);
+        Piece[] pieces = Piece.getPieces();
+        Board board = new Board(10, 24);
+        PersistentBoard persistent = PersistentBoard.empty(10, 24);
+
+        for (int i = 0; i < 2000; i++) {
+            Piece piece = HeadlessGame.rotation(pieces[random.nextInt(pieces.length)], random.nextInt(4));
+            int x = random.nextInt(board.getWidth() - piece.getWidth() + 1);
+            int y = board.dropHeight(piece, x);
+            assertEquals(y, persistent.dropHeight(piece, x));
+
+            if (y + piece.getHeight() > 20) {
+                board = new Board(10, 24);
+                persistent = PersistentBoard.empty(10, 24);
+                continue;
+            }
+
+            PersistentBoard parent = persistent;
+            assertTrue(board.place(piece, x, y) <= Board.PLACE_ROW_FILLED);
+            persistent = persistent.place(piece, x, y);
+            assertSameBoard(board, persistent);
+
+            board.clearRows();
+            board.commit();
+            persistent = persistent.clearRows();
+            assertSameBoard(board, persistent);
+            assertNotSame(parent, persistent);
+        }
+
+        Board copy = new Board(10, 24);
+        persistent.copyTo(copy);
+        assertSameBoard(copy, PersistentBoard.of(board));
+    }
+}
@@ -39,9 +39,13 @@ public class Piece {
     // Attributes
     private List<TPoint> body;
     private List<Integer> skirt;
+    private int[] skirtArray; // the same, unboxed, for dropHeight()
     private int width;
     private int height;
 
+    // the next rotation, once fastRotation() has linked them all
+    private volatile Piece next;
+
     static private Piece[] pieces; // singleton static array of first rotations
 
     /**
@@ -72,6 +76,15 @@ public class Piece {
                 this.skirt.set(point.x, point.y);
             }
         }
+        this.skirtArray = toArray(this.skirt);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
     }
 
     /**
@@ -85,6 +98,7 @@ public class Piece {
     public Piece(Piece piece) {
         this.body = new ArrayList<>(piece.body);
         this.skirt = new ArrayList<>(piece.skirt);
+        this.skirtArray = piece.skirtArray.clone();
         this.width = piece.width;
         this.height = piece.height;
     }
@@ -141,6 +155,14 @@ public class Piece {
         return this.skirt;
     }
 
+    /**
+     * Returns the skirt as an int array, without the boxing of getSkirt().
+     * The caller should not modify this array.
+     */
+    public int[] getSkirtArray() {
+        return this.skirtArray;
+    }
+
     /**
      * Returns a new piece that is 90 degrees counter-clockwise rotated from the
      * receiver.
@@ -161,6 +183,41 @@ public class Piece {
         return new Piece(points);
     }
 
+    /**
+     * Returns the piece 90 degrees counter-clockwise rotated from the
+     * receiver, like computeNextRotation(), but without allocating: the
+     * first call computes all the rotations once and links them in a ring,
+     * so that rotating the last one gives back the receiver itself, and
+     * later calls follow the links.
+     */
+    public Piece fastRotation() {
+        Piece next = this.next;
+        if (next == null) {
+            next = linkRotations();
+        }
+        return next;
+    }
+
+    // links the rotations of this piece in a ring, this one's link last so
+    // that whoever sees it sees the whole ring
+    private Piece linkRotations() {
+        Piece first = computeNextRotation();
+        if (first.equals(this)) {
+            first = this;
+        }
+        Piece current = first;
+        while (current != this) {
+            Piece rotated = current.computeNextRotation();
+            if (rotated.equals(this)) {
+                rotated = this;
+            }
+            current.next = rotated;
+            current = rotated;
+        }
+        this.next = first;
+        return first;
+    }
+
     /**
      * Returns true if two pieces are the same -- their bodies contain the same
      * points. Interestingly, this is not the same as having exactly the same
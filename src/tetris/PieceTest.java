@@ -64,5 +64,26 @@ public class PieceTest {
 
     }
 
+    @Test
+    public void testFastRotation() {
+        for (Piece root : Piece.getPieces()) {
+            Piece slow = root;
+            Piece fast = root;
+            int n = 0;
+            do {
+                slow = slow.computeNextRotation();
+                fast = fast.fastRotation();
+                assertEquals(slow, fast);
+                assertEquals(slow.getSkirt().size(), fast.getSkirtArray().length);
+                n++;
+            } while (fast != root && n < 5);
+            assertTrue(fast == root); // the ring closes on the piece itself
+            assertTrue(fast.fastRotation() == root.fastRotation());
+        }
+
+        Piece square = new Piece(Piece.SQUARE_STR);
+        assertTrue(square.fastRotation() == square);
+    }
+
 
 }
@@ -0,0 +1,209 @@
+// PositionCorpus.java
+
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A fixed set of game positions -- a board and the piece to play on it --
+ * for measuring brains and boards on the same, realistic workload. The
+ * positions are taken from seeded self-play, so a corpus file can be made
+ * again exactly from its seed, and no position is in it twice.
+ * <p>
+ * The file is memory-mapped read-only and every record has the same size,
+ * so position i is read where it lies: read() decodes it straight into a
+ * reused Board, and getPiece() and hash() don't decode at all. Reads don't
+ * touch any shared state, so a corpus can be read from several threads.
+ * <p>
+ * All values are little-endian. The file starts with a HEADER_SIZE byte
+ * header:
+ * <pre>
+ * int   MAGIC
+ * short VERSION
+ * byte  board width
+ * byte  board height
+ * int   number of positions
+ * int   record size
+ * </pre>
+ * followed by the records: the board's BoardCodec encoding, then the index
+ * in Piece.getPieces() of the piece to play, in a byte.
+ */
+public class PositionCorpus implements Closeable {
+
+    public static final int MAGIC = 0x43505454; // "TTPC" in little-endian
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int count;
+    private final int recordSize;
+
+    /**
+     * Opens an existing corpus file.
+     */
+    public PositionCorpus(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (this.channel.size() < HEADER_SIZE) {
+            this.channel.close();
+            throw new IOException("Not a position corpus: " + file);
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        this.width = this.buffer.get(6) & 0xff;
+        this.height = this.buffer.get(7) & 0xff;
+        this.count = this.buffer.getInt(8);
+        this.recordSize = this.buffer.getInt(12);
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getShort(4) != VERSION
+                || this.recordSize != recordSize(this.width, this.height)
+                || this.channel.size() != HEADER_SIZE + (long) this.count * this.recordSize) {
+            this.channel.close();
+            throw new IOException("Not a position corpus: " + file);
+        }
+    }
+
+    private static int recordSize(int width, int height) {
+        return BoardCodec.size(width, height) + 1;
+    }
+
+    /**
+     * Writes a corpus of count distinct positions on boards of the given
+     * size to the file, replacing it. The positions come from games the
+     * brain plays, one seeded game after another; about one position in
+     * four is kept, so they are spread over whole games rather than their
+     * first moves. Two positions are the same if BoardCodec.hash() of their
+     * boards and their pieces are.
+     */
+    public static void write(Path file, int count, int width, int height, long seed, Brain brain)
+            throws IOException {
+        final int recordSize = recordSize(width, height);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) count * recordSize);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            out.put((byte) width);
+            out.put((byte) height);
+            out.putInt(count);
+            out.putInt(recordSize);
+
+            Random random = new Random(seed);
+            Set<Long> seen = new HashSet<>();
+            HeadlessGame game = new HeadlessGame(width, height, random.nextLong());
+            while (seen.size() < count) {
+                if (!game.isGameOn()) {
+                    game = new HeadlessGame(width, height, random.nextLong());
+                }
+                if (random.nextInt(4) == 0
+                        && seen.add(key(BoardCodec.hash(game.getBoard()), game.getPieceIndex()))) {
+                    BoardCodec.encode(game.getBoard(), out);
+                    out.put((byte) game.getPieceIndex());
+                }
+                game.playWith(brain);
+            }
+            out.force();
+        }
+    }
+
+    // what makes positions the same, see write()
+    private static long key(long boardHash, int pieceIndex) {
+        return (boardHash ^ pieceIndex) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Returns the number of positions.
+     */
+    public int size() {
+        return this.count;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns the height pieces must stay under, as HeadlessGame passes it
+     * to Brain.bestMove() on boards of this size.
+     */
+    public int getLimitHeight() {
+        return this.height - JTetris.TOP_SPACE;
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= this.count) {
+            throw new IndexOutOfBoundsException("No position " + i);
+        }
+        return HEADER_SIZE + i * this.recordSize;
+    }
+
+    /**
+     * Decodes the board of position i into the given board, which must be
+     * getWidth() by getHeight(). The board is left committed.
+     */
+    public void read(int i, Board board) {
+        BoardCodec.decode(this.buffer, offset(i), board);
+    }
+
+    /**
+     * Returns the index in Piece.getPieces() of the piece to play at
+     * position i.
+     */
+    public int getPieceIndex(int i) {
+        return this.buffer.get(offset(i) + this.recordSize - 1);
+    }
+
+    /**
+     * Returns the piece to play at position i, in its first rotation.
+     */
+    public Piece getPiece(int i) {
+        return Piece.getPieces()[getPieceIndex(i)];
+    }
+
+    /**
+     * Returns BoardCodec.hash() of the board of position i, read in place.
+     */
+    public long hash(int i) {
+        return BoardCodec.hash(this.buffer, offset(i));
+    }
+
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java tetris.PositionCorpus file positions [seed]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int positions = Integer.parseInt(args[1]);
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+
+        Brain brain = JBrainTetris.createBrain(System.getProperty("tetris.brain"));
+        final long start = System.nanoTime();
+        write(file, positions, JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE, seed, brain);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d positions, %d bytes, in %.1f s%n", positions,
+                HEADER_SIZE + (long) positions * recordSize(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE),
+                seconds);
+    }
+}
@@ -0,0 +1,66 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PositionCorpusTest {
+
+    private static Path write(int count, int width, int height, long seed) throws IOException {
+        Path file = Files.createTempFile("corpus", ".bin");
+        file.toFile().deleteOnExit();
+        PositionCorpus.write(file, count, width, height, seed, new DefaultBrain());
+        return file;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = write(300, 10, 24, 3);
+        assertEquals(PositionCorpus.HEADER_SIZE + 300 * (BoardCodec.size(10, 24) + 1), Files.size(file));
+
+        try (PositionCorpus corpus = new PositionCorpus(file)) {
+            assertEquals(300, corpus.size());
+            assertEquals(10, corpus.getWidth());
+            assertEquals(24, corpus.getHeight());
+            assertEquals(new HeadlessGame(0).getLimitHeight(), corpus.getLimitHeight());
+
+            Board board = new Board(10, 24);
+            Set<Long> seen = new HashSet<>();
+            boolean stacked = false;
+            for (int i = 0; i < corpus.size(); i++) {
+                corpus.read(i, board);
+                assertEquals(BoardCodec.hash(board), corpus.hash(i));
+                assertTrue(corpus.getPiece(i) == Piece.getPieces()[corpus.getPieceIndex(i)]);
+                // no position twice
+                assertTrue(seen.add(corpus.hash(i) * 7 + corpus.getPieceIndex(i)));
+                stacked |= board.getMaxHeight() >= 4;
+            }
+            // mid-game stacks, not just the empty board
+            assertTrue(stacked);
+        }
+    }
+
+    @Test
+    public void testSameSeed() throws IOException {
+        Path a = write(200, 7, 13, 5);
+        Path b = write(200, 7, 13, 5);
+        Path c = write(200, 7, 13, 6);
+        assertArrayEquals(Files.readAllBytes(a), Files.readAllBytes(b));
+        assertFalse(Arrays.equals(Files.readAllBytes(a), Files.readAllBytes(c)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotACorpus() throws IOException {
+        Path file = Files.createTempFile("corpus", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[40]);
+        new PositionCorpus(file);
+    }
+}
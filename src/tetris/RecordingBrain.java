@@ -0,0 +1,45 @@
+// RecordingBrain.java
+
+package tetris;
+
+/**
+ * A Brain that plays like the brain it wraps and sends each of its
+ * decisions to a TrainingExporter. Wrapping an AnytimeBrain keeps the
+ * deadline working.
+ */
+public class RecordingBrain implements AnytimeBrain {
+
+    private final Brain brain;
+    private final TrainingExporter exporter;
+
+    public RecordingBrain(Brain brain, TrainingExporter exporter) {
+        this.brain = brain;
+        this.exporter = exporter;
+    }
+
+    public Brain getBrain() {
+        return this.brain;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight) {
+        Brain.Move move = this.brain.bestMove(board, piece, limitHeight);
+        this.exporter.write(board, move);
+        return move;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, long deadline) {
+        if (!(this.brain instanceof AnytimeBrain)) {
+            return bestMove(board, piece, limitHeight);
+        }
+        Brain.Move move = ((AnytimeBrain) this.brain).bestMove(board, piece, limitHeight, deadline);
+        this.exporter.write(board, move);
+        return move;
+    }
+
+    public void bestMoves(Board[] boards, Piece[] pieces, int count, int limitHeight, Brain.Move[] results) {
+        this.brain.bestMoves(boards, pieces, count, limitHeight, results);
+        for (int i = 0; i < count; i++) {
+            this.exporter.write(boards[i], results[i]);
+        }
+    }
+}
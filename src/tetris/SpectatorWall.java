@@ -0,0 +1,288 @@
+// SpectatorWall.java
+
+package tetris;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.WindowConstants;
+
+/**
+ * Watches many brain games at once. The games are HeadlessGames played as
+ * fast as the simulation threads go, restarting when they end, and shown
+ * as a grid of small boards in this one component.
+ * <p>
+ * Drawing is done by a single render thread at up to a fixed frame rate,
+ * not by one Swing timer and component per game. Once per frame it asks
+ * every game for a snapshot, which the simulation thread publishes with
+ * Board.publish() after its next move -- so copying costs the simulation
+ * at most one small BoardSnapshot per game per frame -- and redraws only
+ * the boards whose snapshot changed, by blitting pre-rendered block images
+ * into an offscreen image. The frames are double buffered and the Swing
+ * thread just draws the latest finished one.
+ */
+@SuppressWarnings("serial")
+public class SpectatorWall extends JComponent {
+
+    private static final int BLOCK = 4; // pixels per block, border included
+    private static final int GAP = 6;   // pixels between boards
+
+    // one game and its hand-over point
+    private static final class Slot {
+        HeadlessGame game;
+        volatile boolean wanted;
+        volatile BoardSnapshot snapshot;
+    }
+
+    private final Slot[] slots;
+    private final int columns;
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final Supplier<Brain> brains;
+    private final int threads;
+    private final long frameNanos;
+
+    private final BufferedImage block;
+    private final BufferedImage filledBlock;
+
+    // front is drawn by Swing, back by the render thread; both under lock
+    // when swapped
+    private final Object lock = new Object();
+    private BufferedImage front;
+    private BufferedImage back;
+    private BoardSnapshot[] frontDrawn;
+    private BoardSnapshot[] backDrawn;
+
+    private final AtomicLong moves = new AtomicLong();
+    private volatile long frames;
+    private volatile boolean running;
+    private Thread[] workers;
+
+    /**
+     * Creates a wall of the given number of standard size games, in the
+     * given number of columns, played by brains from the supplier (one per
+     * simulation thread) on that many threads, drawn at up to fps frames
+     * per second.
+     */
+    public SpectatorWall(int games, int columns, Supplier<Brain> brains, int threads, int fps) {
+        this.columns = columns;
+        this.brains = brains;
+        this.threads = threads;
+        this.frameNanos = 1000000000L / fps;
+        this.boardWidth = JTetris.WIDTH;
+        this.boardHeight = JTetris.HEIGHT + JTetris.TOP_SPACE;
+        this.tileWidth = this.boardWidth * BLOCK + 2 + GAP;
+        this.tileHeight = this.boardHeight * BLOCK + 2 + GAP;
+
+        this.slots = new Slot[games];
+        for (int i = 0; i < games; i++) {
+            this.slots[i] = new Slot();
+            this.slots[i].game = new HeadlessGame(i);
+        }
+
+        this.block = blockImage(Color.black);
+        this.filledBlock = blockImage(Color.green);
+
+        int rows = (games + columns - 1) / columns;
+        Dimension size = new Dimension(columns * this.tileWidth, rows * this.tileHeight);
+        setPreferredSize(size);
+        this.front = newFrame(size);
+        this.back = newFrame(size);
+        this.frontDrawn = new BoardSnapshot[games];
+        this.backDrawn = new BoardSnapshot[games];
+    }
+
+    private static BufferedImage blockImage(Color color) {
+        BufferedImage image = new BufferedImage(BLOCK, BLOCK, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, BLOCK, BLOCK);
+        g.setColor(color);
+        g.fillRect(0, 0, BLOCK - 1, BLOCK - 1); // leaves a white border
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage newFrame(Dimension size) {
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, size.width, size.height);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Starts the simulation threads and the render thread.
+     */
+    public void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        this.workers = new Thread[this.threads + 1];
+        for (int t = 0; t < this.threads; t++) {
+            final int first = t;
+            this.workers[t] = new Thread(() -> simulate(first), "spectator-sim-" + t);
+        }
+        this.workers[this.threads] = new Thread(this::renderLoop, "spectator-render");
+        for (Thread worker : this.workers) {
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops all the threads and waits for them.
+     */
+    public void stop() throws InterruptedException {
+        this.running = false;
+        if (this.workers != null) {
+            for (Thread worker : this.workers) {
+                worker.join();
+            }
+            this.workers = null;
+        }
+    }
+
+    public long getMoves() {
+        return this.moves.get();
+    }
+
+    public long getFrames() {
+        return this.frames;
+    }
+
+    // plays the games first, first + threads, ... a move each in turn
+    private void simulate(int first) {
+        Brain brain = this.brains.get();
+        long seed = this.slots.length + first;
+        long played = 0;
+        while (this.running) {
+            for (int i = first; i < this.slots.length; i += this.threads) {
+                Slot slot = this.slots[i];
+                if (!slot.game.isGameOn()) {
+                    slot.game = new HeadlessGame(seed);
+                    seed += this.threads;
+                }
+                slot.game.playWith(brain);
+                played++;
+
+                if (slot.wanted) {
+                    slot.snapshot = slot.game.getBoard().publish();
+                    slot.wanted = false;
+                }
+            }
+            if (played >= 1024) {
+                this.moves.addAndGet(played);
+                played = 0;
+            }
+        }
+        this.moves.addAndGet(played);
+    }
+
+    private void renderLoop() {
+        long next = System.nanoTime();
+        while (this.running) {
+            renderFrame();
+            repaint();
+
+            next += this.frameNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } else {
+                next = System.nanoTime(); // running late, don't try to catch up
+            }
+        }
+    }
+
+    /**
+     * Draws the next frame into the back image and makes it the front one.
+     * Called by the render thread.
+     */
+    void renderFrame() {
+        Graphics2D g = this.back.createGraphics();
+        try {
+            for (int i = 0; i < this.slots.length; i++) {
+                Slot slot = this.slots[i];
+                BoardSnapshot snapshot = slot.snapshot;
+                slot.wanted = true;
+                if (snapshot != null && snapshot != this.backDrawn[i]) {
+                    drawBoard(g, i, snapshot);
+                    this.backDrawn[i] = snapshot;
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+
+        synchronized (this.lock) {
+            BufferedImage image = this.front;
+            this.front = this.back;
+            this.back = image;
+            BoardSnapshot[] drawn = this.frontDrawn;
+            this.frontDrawn = this.backDrawn;
+            this.backDrawn = drawn;
+        }
+        this.frames++;
+    }
+
+    private void drawBoard(Graphics2D g, int index, BoardSnapshot snapshot) {
+        final int left = (index % this.columns) * this.tileWidth;
+        final int top = (index / this.columns) * this.tileHeight;
+        final int width = this.boardWidth * BLOCK + 2;
+        final int height = this.boardHeight * BLOCK + 2;
+        final long full = (1L << this.boardWidth) - 1;
+
+        g.setColor(Color.white);
+        g.fillRect(left, top, width, height);
+        g.setColor(Color.black);
+        g.drawRect(left, top, width - 1, height - 1);
+
+        for (int y = 0; y < snapshot.getMaxHeight(); y++) {
+            long row = snapshot.getRowBits(y);
+            BufferedImage image = (row == full) ? this.filledBlock : this.block;
+            int py = top + 1 + (this.boardHeight - 1 - y) * BLOCK;
+            while (row != 0) {
+                int x = Long.numberOfTrailingZeros(row);
+                g.drawImage(image, left + 1 + x * BLOCK, py, null);
+                row &= row - 1;
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        synchronized (this.lock) {
+            g.drawImage(this.front, 0, 0, null);
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        SpectatorWall wall = new SpectatorWall(games, (int) Math.ceil(Math.sqrt(games * 2.0)),
+                () -> JBrainTetris.createBrain(System.getProperty("tetris.brain")), threads, 30);
+
+        JFrame frame = new JFrame("Spectator wall");
+        frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        frame.add(new javax.swing.JScrollPane(wall));
+        frame.pack();
+        frame.setVisible(true);
+        wall.start();
+    }
+}
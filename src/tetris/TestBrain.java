@@ -41,4 +41,202 @@ public class TestBrain {
         assertEquals(0, bestMove.y);
         assertEquals(new Piece("1 2 1 1 1 0 0 2"), bestMove.piece);
     }
+
+    @Test
+    public void testBatchMatchesSingle() {
+        Brain brain = new DefaultBrain();
+        Piece[] roots = Piece.getPieces();
+        int count = 100;
+        Board[] boards = new Board[count];
+        Piece[] pieces = new Piece[count];
+
+        // boards taken from a game in progress
+        HeadlessGame game = new HeadlessGame(3);
+        for (int i = 0; i < count; i++) {
+            boards[i] = new Board(game.getBoard());
+            pieces[i] = roots[i % roots.length];
+            game.playWith(brain);
+        }
+
+        Brain.Move[] results = new Brain.Move[count];
+        brain.bestMoves(boards, pieces, count, 20, results);
+
+        for (int i = 0; i < count; i++) {
+            Brain.Move single = brain.bestMove(boards[i], pieces[i], 20);
+            assertEquals(single.x, results[i].x);
+            assertEquals(single.y, results[i].y);
+            assertEquals(single.piece, results[i].piece);
+            assertEquals(single.score, results[i].score, 0.0);
+        }
+    }
+
+    @Test
+    public void testLookaheadBatchMatchesSingle() {
+        LookaheadBrain brain = new LookaheadBrain(2, 10000);
+        Piece[] roots = Piece.getPieces();
+        int count = 10;
+        Board[] boards = new Board[count];
+        Piece[] pieces = new Piece[count];
+
+        HeadlessGame game = new HeadlessGame(5);
+        for (int i = 0; i < count; i++) {
+            boards[i] = new Board(game.getBoard());
+            pieces[i] = roots[i % roots.length];
+            game.playWith(brain);
+        }
+
+        Brain.Move[] results = new Brain.Move[count];
+        brain.bestMoves(boards, pieces, count, 20, results);
+
+        for (int i = 0; i < count; i++) {
+            Brain.Move single = brain.bestMove(boards[i], pieces[i], 20);
+            assertEquals(single.x, results[i].x);
+            assertEquals(single.y, results[i].y);
+            assertEquals(single.piece, results[i].piece);
+            assertEquals(single.score, results[i].score, 0.0);
+        }
+    }
+
+    @Test
+    public void testAnytimePastDeadline() {
+        // with no time at all, an anytime brain still answers with the
+        // one-piece search
+        HeadlessGame game = new HeadlessGame(11);
+        for (int i = 0; i < 20; i++) {
+            game.playWith(new DefaultBrain());
+        }
+        Board b = game.getBoard();
+        Piece p = game.getCurrentPiece();
+
+        Brain.Move expected = new DefaultBrain().bestMove(b, p, 20);
+        Brain.Move move = new LookaheadBrain(3, 0).bestMove(b, p, 20, System.nanoTime() - 1);
+        assertEquals(expected.x, move.x);
+        assertEquals(expected.piece, move.piece);
+    }
+
+    @Test
+    public void testLookahead() {
+        Board b = new Board(10, 24);
+        LookaheadBrain brain = new LookaheadBrain(2, 10000);
+        Brain.Move move = brain.bestMove(b, new Piece(Piece.S1_STR), 20);
+
+        assertNotNull(move);
+        assertEquals(b.dropHeight(move.piece, move.x), move.y);
+        assertTrue(move.score < LookaheadBrain.GAME_OVER);
+    }
+
+    @Test
+    public void testLookaheadLimit() {
+        // three rows full but for column 0, and no room left under the limit:
+        // every placement reaches one row above it, as depth 1 allows
+        Board b = new Board(4, 8);
+        Piece cell = new Piece("0 0");
+        for (int y = 0; y < 3; y++) {
+            for (int x = 1; x < 4; x++) {
+                b.place(cell, x, y);
+                b.commit();
+            }
+        }
+        Piece stick = new Piece(Piece.STICK_STR);
+        Brain.Move shallow = new DefaultBrain().bestMove(b, stick, 3);
+        Brain.Move deep = new LookaheadBrain(2, 10000).bestMove(b, stick, 3);
+
+        assertEquals(0, deep.x);
+        assertEquals(stick, deep.piece);
+        // scored by the depth 2 search, not left over from depth 1
+        assertTrue(deep.score != shallow.score);
+        assertTrue(deep.score < LookaheadBrain.GAME_OVER);
+    }
+
+    @Test
+    public void testExpectimax() {
+        // depth 3 forks the chance nodes below the root and caches them
+        HeadlessGame game = new HeadlessGame(6, 16, 2);
+        for (int i = 0; i < 10; i++) {
+            game.playWith(new DefaultBrain());
+        }
+        Board b = game.getBoard();
+        Piece p = game.getCurrentPiece();
+        int limit = game.getLimitHeight();
+
+        ExpectimaxBrain brain = new ExpectimaxBrain(3, 60000, 2);
+        Brain.Move move = brain.bestMove(b, p, limit);
+        assertNotNull(move);
+        assertEquals(b.dropHeight(move.piece, move.x), move.y);
+        assertTrue(move.score < LookaheadBrain.GAME_OVER);
+
+        // the same search as LookaheadBrain's, and the same answer again
+        Brain.Move plain = new LookaheadBrain(3, 60000).bestMove(b, p, limit);
+        Brain.Move again = brain.bestMove(b, p, limit);
+        for (Brain.Move other : new Brain.Move[]{plain, again}) {
+            assertEquals(move.x, other.x);
+            assertEquals(move.y, other.y);
+            assertEquals(move.piece, other.piece);
+            assertEquals(move.score, other.score, 0.0);
+        }
+    }
+
+    @Test
+    public void testExpectimaxShared() throws InterruptedException {
+        // two threads on one brain, with different limits: each call keeps
+        // its own cache, so both get LookaheadBrain's answers
+        final ExpectimaxBrain brain = new ExpectimaxBrain(3, 60000, 2);
+        final Board[] boards = new Board[2];
+        final Piece[] pieces = new Piece[2];
+        final int[] limits = {12, 10};
+        final Brain.Move[] moves = new Brain.Move[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < 2; i++) {
+            HeadlessGame game = new HeadlessGame(6, 16, 3 + i);
+            for (int j = 0; j < 8; j++) {
+                game.playWith(new DefaultBrain());
+            }
+            boards[i] = game.getBoard();
+            pieces[i] = game.getCurrentPiece();
+            final int n = i;
+            threads[i] = new Thread(() -> moves[n] = brain.bestMove(boards[n], pieces[n], limits[n]));
+            threads[i].start();
+        }
+        for (int i = 0; i < 2; i++) {
+            threads[i].join();
+            Brain.Move expected = new LookaheadBrain(3, 60000).bestMove(boards[i], pieces[i], limits[i]);
+            assertEquals(expected.x, moves[i].x);
+            assertEquals(expected.piece, moves[i].piece);
+            assertEquals(expected.score, moves[i].score, 0.0);
+        }
+    }
+
+    @Test
+    public void testExpectimaxDeadline() {
+        HeadlessGame game = new HeadlessGame(11);
+        for (int i = 0; i < 20; i++) {
+            game.playWith(new DefaultBrain());
+        }
+        Board b = game.getBoard();
+        Piece p = game.getCurrentPiece();
+        ExpectimaxBrain brain = new ExpectimaxBrain(3, 60000, 2);
+
+        // past already: the depth 1 answer
+        Brain.Move expected = new DefaultBrain().bestMove(b, p, 20);
+        Brain.Move move = brain.bestMove(b, p, 20, System.nanoTime() - 1);
+        assertEquals(expected.x, move.x);
+        assertEquals(expected.piece, move.piece);
+
+        // passing during the parallel depth 3 search: the timeout comes back
+        // out of the pool and the last finished depth answers
+        long start = System.nanoTime();
+        move = brain.bestMove(b, p, 20, start + 20000000L);
+        assertTrue(System.nanoTime() - start < 1000000000L);
+        assertNotNull(move);
+        assertEquals(b.dropHeight(move.piece, move.x), move.y);
+    }
+
+    @Test
+    public void testBatchNoPlay() {
+        Board b = new Board(3, 3);
+        Brain.Move[] results = {new Brain.Move()};
+        new DefaultBrain().bestMoves(new Board[]{b}, new Piece[]{new Piece(Piece.STICK_STR).computeNextRotation()},
+                1, 3, results);
+        assertNull(results[0].piece);
+    }
 }
@@ -0,0 +1,113 @@
+// TetrisEvents.java
+
+package tetris;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event types emitted by the game. All of them are
+ * disabled by default, so unless a recording explicitly turns them on
+ * (e.g. with a .jfc file setting tetris.BrainDecision#enabled=true) the
+ * only cost is the isEnabled() check, which the JIT folds away.
+ * <p>
+ * Typical use: record a long JBrainTetris session with CPU sampling and
+ * these events enabled, then line up latency spikes with the moves and
+ * board states that caused them.
+ */
+public final class TetrisEvents {
+
+    private TetrisEvents() {
+    }
+
+    @Name("tetris.BrainDecision")
+    @Label("Brain Decision")
+    @Category("Tetris")
+    @Description("One Brain.bestMove() call")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class BrainDecision extends Event {
+        @Label("Brain")
+        public String brain;
+
+        @Label("Candidates Evaluated")
+        public int candidates;
+
+        @Label("Best X")
+        public int bestX;
+
+        @Label("Best Y")
+        public int bestY;
+
+        @Label("Best Score")
+        public double bestScore;
+    }
+
+    @Name("tetris.Placement")
+    @Label("Placement")
+    @Category("Tetris")
+    @Description("One Board.place() call")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Placement extends Event {
+        @Label("X")
+        public int x;
+
+        @Label("Y")
+        public int y;
+
+        @Label("Result")
+        @Description("One of the Board.PLACE_* codes")
+        public int result;
+
+        @Label("Max Height")
+        public int maxHeight;
+    }
+
+    @Name("tetris.LineClear")
+    @Label("Line Clear")
+    @Category("Tetris")
+    @Description("One Board.clearRows() call that removed at least one row")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class LineClear extends Event {
+        @Label("Rows Cleared")
+        public int rowsCleared;
+
+        @Label("Max Height")
+        @Description("Max column height after the rows were removed")
+        public int maxHeight;
+    }
+
+    @Name("tetris.Tick")
+    @Label("Tick")
+    @Category("Tetris")
+    @Description("One JTetris.tick() call")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Tick extends Event {
+        @Label("Verb")
+        @Description("ROTATE=0, LEFT=1, RIGHT=2, DROP=3, DOWN=4")
+        public int verb;
+
+        @Label("Piece Count")
+        public int count;
+    }
+
+    @Name("tetris.Paint")
+    @Label("Paint")
+    @Category("Tetris")
+    @Description("One JTetris.paintComponent() call")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Paint extends Event {
+        @Label("Clip Area")
+        @Description("Pixels in the clip rectangle, or -1 for a full repaint")
+        public int clipArea;
+    }
+}
@@ -0,0 +1,197 @@
+// TrainingExporter.java
+
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams brain decisions to a binary file, as training data for evaluators
+ * learnt offline. Every sample is one fixed-width record, so a file can be
+ * memory-mapped and indexed directly by whatever reads it.
+ * <p>
+ * All values are little-endian. The file starts with a HEADER_SIZE byte
+ * header:
+ * <pre>
+ * int   MAGIC
+ * short VERSION
+ * byte  board width
+ * byte  board height
+ * int   record size, recordSize(width, height)
+ * int   0 (reserved)
+ * </pre>
+ * followed by the records:
+ * <pre>
+ * long[height] rows, packed as in Board.getRowBits()
+ * byte[width]  column heights
+ * byte         piece, its index in Piece.getPieces()
+ * byte         rotation of the chosen move, as in HeadlessGame.rotation()
+ * byte         x of the chosen move
+ * byte         y of the chosen move
+ * double       score of the chosen move
+ * </pre>
+ * The board is the one the brain was given, before the move. Records are
+ * collected in a large direct buffer and written to the channel a buffer at
+ * a time, so the cost per sample is a few dozen stores. Decisions where no
+ * move was possible are not recorded.
+ * <p>
+ * write() is synchronized, so brains running on several threads can share
+ * an exporter. From the command line,
+ * <pre>
+ * java tetris.TrainingExporter file games [seed]
+ * </pre>
+ * plays that many headless games with the brain named by the tetris.brain
+ * property (see JBrainTetris) and exports every decision.
+ */
+public class TrainingExporter implements Closeable {
+
+    public static final int MAGIC = 0x4e525454; // "TTRN" in little-endian
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int recordSize;
+    private long count;
+
+    /**
+     * Creates (or truncates) the file and writes the header, for boards of
+     * the given size -- at most Board.MAX_PACKED_WIDTH wide and 127 high.
+     */
+    public TrainingExporter(Path file, int width, int height) throws IOException {
+        if (width > Board.MAX_PACKED_WIDTH || height > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Board too big to export");
+        }
+        this.width = width;
+        this.height = height;
+        this.recordSize = recordSize(width, height);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        this.buffer.putInt(MAGIC);
+        this.buffer.putShort(VERSION);
+        this.buffer.put((byte) width);
+        this.buffer.put((byte) height);
+        this.buffer.putInt(this.recordSize);
+        this.buffer.putInt(0);
+    }
+
+    /**
+     * Returns the size in bytes of one record for boards of the given size.
+     */
+    public static int recordSize(int width, int height) {
+        return 8 * height + width + 4 + 8;
+    }
+
+    /**
+     * Returns the number of samples written so far.
+     */
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Records the decision move on board. A null move is ignored.
+     * I/O errors are thrown as RuntimeExceptions, since this runs in the
+     * middle of games.
+     */
+    public synchronized void write(Board board, Brain.Move move) {
+        if (move == null || move.piece == null) {
+            return;
+        }
+        if (board.getWidth() != this.width || board.getHeight() != this.height) {
+            throw new IllegalArgumentException("Board size does not match the export file");
+        }
+        if (this.buffer.remaining() < this.recordSize) {
+            drain();
+        }
+
+        for (int y = 0; y < this.height; y++) {
+            this.buffer.putLong(board.getRowBits(y));
+        }
+        for (int x = 0; x < this.width; x++) {
+            this.buffer.put((byte) board.getColumnHeight(x));
+        }
+
+        // which of the root pieces the move's piece is a rotation of
+        int id = -1;
+        int rotation = -1;
+        Piece[] pieces = Piece.getPieces();
+        for (int i = 0; i < pieces.length && rotation < 0; i++) {
+            rotation = HeadlessGame.rotationIndex(pieces[i], move.piece);
+            id = i;
+        }
+        if (rotation < 0) {
+            throw new IllegalArgumentException("Not a standard piece: " + move.piece);
+        }
+
+        this.buffer.put((byte) id);
+        this.buffer.put((byte) rotation);
+        this.buffer.put((byte) move.x);
+        this.buffer.put((byte) move.y);
+        this.buffer.putDouble(move.score);
+        this.count++;
+    }
+
+    /**
+     * Writes out everything buffered so far.
+     */
+    public synchronized void flush() {
+        drain();
+    }
+
+    public synchronized void close() throws IOException {
+        if (this.channel.isOpen()) {
+            drain();
+            this.channel.close();
+        }
+    }
+
+    private void drain() {
+        this.buffer.flip();
+        try {
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.buffer.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java tetris.TrainingExporter file games [seed]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int games = Integer.parseInt(args[1]);
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+
+        Brain brain = JBrainTetris.createBrain(System.getProperty("tetris.brain"));
+        final long start = System.nanoTime();
+        try (TrainingExporter exporter = new TrainingExporter(file, JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE)) {
+            Brain recording = new RecordingBrain(brain, exporter);
+            for (int i = 0; i < games; i++) {
+                HeadlessGame game = new HeadlessGame(seed + i);
+                while (game.isGameOn()) {
+                    game.playWith(recording);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d samples from %d games in %.1f s (%.0f samples/s)%n",
+                    exporter.getCount(), games, seconds, exporter.getCount() / seconds);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TrainingExporterTest {
+
+    @Test
+    public void testRecords() throws Exception {
+        Path file = Files.createTempFile("tetris", ".samples");
+        List<Board> boards = new ArrayList<>();
+        List<Brain.Move> moves = new ArrayList<>();
+
+        try (TrainingExporter exporter = new TrainingExporter(file, 8, 16)) {
+            Brain brain = new RecordingBrain(new DefaultBrain(), exporter);
+            HeadlessGame game = new HeadlessGame(8, 16, 5);
+            for (int i = 0; i < 200 && game.isGameOn(); i++) {
+                boards.add(new Board(game.getBoard()));
+                Brain.Move move = brain.bestMove(game.getBoard(), game.getCurrentPiece(), game.getLimitHeight());
+                moves.add(move);
+                game.play(move.piece, move.x);
+            }
+            assertEquals(moves.size(), exporter.getCount());
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        Files.delete(file);
+        int size = TrainingExporter.recordSize(8, 16);
+        assertEquals(TrainingExporter.HEADER_SIZE + moves.size() * size, in.capacity());
+        assertEquals(TrainingExporter.MAGIC, in.getInt());
+        assertEquals(TrainingExporter.VERSION, in.getShort());
+        assertEquals(8, in.get());
+        assertEquals(16, in.get());
+        assertEquals(size, in.getInt());
+        in.getInt();
+
+        for (int i = 0; i < moves.size(); i++) {
+            Board board = boards.get(i);
+            Brain.Move move = moves.get(i);
+            for (int y = 0; y < 16; y++) {
+                assertEquals(board.getRowBits(y), in.getLong());
+            }
+            for (int x = 0; x < 8; x++) {
+                assertEquals(board.getColumnHeight(x), in.get());
+            }
+            Piece root = Piece.getPieces()[in.get()];
+            assertEquals(move.piece, HeadlessGame.rotation(root, in.get()));
+            assertEquals(move.x, in.get());
+            assertEquals(move.y, in.get());
+            assertEquals(move.score, in.getDouble(), 0);
+        }
+    }
+}
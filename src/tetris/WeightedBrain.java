@@ -0,0 +1,39 @@
+// WeightedBrain.java
+
+package tetris;
+
+/**
+ * A DefaultBrain whose rateBoard() is an Evaluator -- by default one
+ * compiled from the weights in the tetris.weights system property (see
+ * EvaluatorConfig), or EvaluatorConfig.standard() if it is not set, so
+ * <pre>
+ * -Dtetris.brain=tetris.WeightedBrain -Dtetris.weights="holes=2 bumpiness=1"
+ * </pre>
+ * plays JBrainTetris with those weights.
+ */
+public class WeightedBrain extends DefaultBrain {
+
+    private final Evaluator evaluator;
+
+    public WeightedBrain() {
+        this(EvaluatorCompiler.compile(configFromProperty()));
+    }
+
+    public WeightedBrain(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    private static EvaluatorConfig configFromProperty() {
+        String weights = System.getProperty("tetris.weights");
+        return (weights == null) ? EvaluatorConfig.standard() : EvaluatorConfig.parse(weights);
+    }
+
+    public Evaluator getEvaluator() {
+        return this.evaluator;
+    }
+
+    @Override
+    public double rateBoard(Board board) {
+        return this.evaluator.rate(board);
+    }
+}